@@ -0,0 +1,679 @@
+package com.craftinginterpreters.language;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// A resolved syntax tree saved in a cache directory, so that running the same script again skips scanning,
+// parsing and resolving. Each file is named after a hash of the script's bytes and encoding, which it also starts
+// with after the format version, and one that doesn't match both is ignored and written afresh.
+class AstCache {
+    private static final int MAGIC = 0x4C4F5841;
+    // Bumped whenever the layout below, or anything the Resolver stores on the tree, changes.
+    private static final int FORMAT_VERSION = 2;
+    private static final String SUFFIX = ".ast";
+    // The most trees kept in one directory. Storing another removes the ones least recently run until this many
+    // are left, so the directory doesn't grow with every script and every edit of one.
+    static final int MAX_ENTRIES = 256;
+
+    private static final int NONE = 0;
+    private static final int EXPRESSION = 1;
+    private static final int FUNCTION = 2;
+    private static final int PRINT = 3;
+    private static final int VAR = 4;
+    private static final int BLOCK = 5;
+    private static final int IF = 6;
+    private static final int WHILE = 7;
+    private static final int BREAK = 8;
+    private static final int RETURN = 9;
+    private static final int CLASS = 10;
+    private static final int BINARY = 11;
+    private static final int GROUPING = 12;
+    private static final int LITERAL = 13;
+    private static final int UNARY = 14;
+    private static final int TERNARY = 15;
+    private static final int VARIABLE = 16;
+    private static final int ASSIGN = 17;
+    private static final int LOGICAL = 18;
+    private static final int CALL = 19;
+    private static final int GET = 20;
+    private static final int SET = 21;
+    private static final int THIS = 22;
+    private static final int SUPER = 23;
+
+    private static final int NIL = 0;
+    private static final int TRUE = 1;
+    private static final int FALSE = 2;
+    private static final int NUMBER = 3;
+    private static final int STRING = 4;
+
+    private final Path path;
+    private final byte[] key;
+    // Slots the script's top level needs, which the Resolver would otherwise have reserved in the Interpreter.
+    int scriptSlots = 0;
+
+    AstCache(Path directory, byte[] key) {
+        StringBuilder name = new StringBuilder();
+        for (byte b : key) {
+            name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        this.path = directory.resolve(name + SUFFIX);
+        this.key = key;
+    }
+
+    // $XDG_CACHE_HOME/jlox, or ~/.cache/jlox if that isn't set.
+    static Path defaultDirectory() {
+        String cacheHome = System.getenv("XDG_CACHE_HOME");
+        Path base = cacheHome != null && !cacheHome.isEmpty()
+                ? Paths.get(cacheHome) : Paths.get(System.getProperty("user.home"), ".cache");
+        return base.resolve("jlox");
+    }
+
+    // The statements saved for this version of the script, or null if there aren't any.
+    List<Stmt> load() {
+        if (!Files.isRegularFile(path)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return null;
+            byte[] stored = new byte[key.length];
+            in.readFully(stored);
+            if (!Arrays.equals(stored, key)) return null;
+
+            Reader reader = new Reader(in);
+            scriptSlots = reader.number();
+            List<Stmt> statements = reader.statements();
+            // Marks the tree as recently used, so pruning removes the ones that haven't been run for longest. A
+            // cache that's only readable still loads.
+            try {
+                Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (IOException ignored) {
+            }
+            return statements;
+        } catch (IOException | RuntimeException error) {
+            // A cache that can't be read is no worse than not having one.
+            return null;
+        }
+    }
+
+    // Must be given the tree as the Resolver left it, before the Optimizer has rewritten it.
+    void store(List<Stmt> statements, int scriptSlots) {
+        Path temp = null;
+        try {
+            Files.createDirectories(path.getParent());
+            // Not Files.createTempFile, whose files can only be read by their owner.
+            temp = path.resolveSibling(path.getFileName() + "." + UUID.randomUUID() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.write(key);
+                Writer writer = new Writer(out);
+                writer.number(scriptSlots);
+                writer.statements(statements);
+            }
+            // Renamed into place so that another run never sees half a file.
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            prune(path.getParent());
+        } catch (IOException | RuntimeException error) {
+            // The script still runs without a cache, say from a directory that can't be written to.
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    // Deletes all but the MAX_ENTRIES most recently used trees in the directory. Another run pruning at the same
+    // time can delete a file first, which is fine.
+    private static void prune(Path directory) throws IOException {
+        Map<Path, FileTime> used = new HashMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                try {
+                    used.put(file, Files.getLastModifiedTime(file));
+                } catch (IOException gone) {
+                }
+            }
+        }
+        if (used.size() <= MAX_ENTRIES) return;
+
+        List<Path> entries = new ArrayList<>(used.keySet());
+        entries.sort(Comparator.comparing(used::get));
+        for (Path file : entries.subList(0, entries.size() - MAX_ENTRIES)) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static class Writer implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        private final DataOutputStream out;
+        // Each distinct string is written once and referred to by number after that.
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void statements(List<Stmt> statements) {
+            number(statements.size());
+            for (Stmt statement : statements) {
+                statement(statement);
+            }
+        }
+
+        private void statement(Stmt stmt) {
+            if (stmt == null) number(NONE);
+            else stmt.accept(this);
+        }
+
+        private void expression(Expr expr) {
+            if (expr == null) number(NONE);
+            else expr.accept(this);
+        }
+
+        private void expressions(List<Expr> expressions) {
+            number(expressions.size());
+            for (Expr expr : expressions) {
+                expression(expr);
+            }
+        }
+
+        private void tag(int tag, Stmt stmt) {
+            number(tag);
+            number(stmt.line);
+        }
+
+        private void token(Token token) {
+            number(token.type.ordinal());
+            string(token.lexeme);
+            number(token.line);
+        }
+
+        private void resolution(Expr expr) {
+            number(expr.distance);
+            number(expr.index);
+        }
+
+        private void declaration(Stmt stmt) {
+            number(stmt.slot);
+            bool(stmt.captured);
+        }
+
+        private void function(Stmt.Function stmt) {
+            token(stmt.name);
+            number(stmt.params.size());
+            for (Token param : stmt.params) {
+                token(param);
+            }
+            statements(stmt.body);
+            number(stmt.slots);
+            numbers(stmt.boxedSlots);
+            number(stmt.upvalueIsLocal.length);
+            for (boolean isLocal : stmt.upvalueIsLocal) {
+                bool(isLocal);
+            }
+            numbers(stmt.upvalueIndices);
+            declaration(stmt);
+        }
+
+        private void numbers(int[] values) {
+            number(values.length);
+            for (int value : values) {
+                number(value);
+            }
+        }
+
+        private void string(String value) {
+            Integer id = strings.get(value);
+            if (id != null) {
+                number(id);
+                return;
+            }
+            id = strings.size();
+            strings.put(value, id);
+            number(id);
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            number(bytes.length);
+            write(bytes);
+        }
+
+        // Most numbers in a tree are small, so they're written seven bits to a byte. Adding one lets -1, which
+        // marks slots and distances that were never set, take a single byte too.
+        void number(int value) {
+            long bits = (value + 1L) & 0xFFFFFFFFL;
+            while (bits >= 0x80) {
+                byteValue((int)(bits & 0x7F) | 0x80);
+                bits >>>= 7;
+            }
+            byteValue((int)bits);
+        }
+
+        private void bool(boolean value) {
+            byteValue(value ? 1 : 0);
+        }
+
+        private void byteValue(int value) {
+            try {
+                out.writeByte(value);
+            } catch (IOException error) {
+                throw new UncheckedIOException(error);
+            }
+        }
+
+        private void write(byte[] bytes) {
+            try {
+                out.write(bytes);
+            } catch (IOException error) {
+                throw new UncheckedIOException(error);
+            }
+        }
+
+        private void doubleValue(double value) {
+            try {
+                out.writeDouble(value);
+            } catch (IOException error) {
+                throw new UncheckedIOException(error);
+            }
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt) {
+            tag(EXPRESSION, stmt);
+            expression(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitFunctionStmt(Stmt.Function stmt) {
+            tag(FUNCTION, stmt);
+            function(stmt);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.Print stmt) {
+            tag(PRINT, stmt);
+            expression(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt) {
+            tag(VAR, stmt);
+            token(stmt.name);
+            expression(stmt.initializer);
+            declaration(stmt);
+            return null;
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            tag(BLOCK, stmt);
+            statements(stmt.statements);
+            return null;
+        }
+
+        @Override
+        public Void visitIfStmt(Stmt.If stmt) {
+            tag(IF, stmt);
+            expression(stmt.condition);
+            statement(stmt.thenBranch);
+            statement(stmt.elseBranch);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.While stmt) {
+            tag(WHILE, stmt);
+            expression(stmt.condition);
+            statement(stmt.body);
+            return null;
+        }
+
+        @Override
+        public Void visitBreakStmt(Stmt.Break stmt) {
+            tag(BREAK, stmt);
+            token(stmt.keyword);
+            return null;
+        }
+
+        @Override
+        public Void visitReturnStmt(Stmt.Return stmt) {
+            tag(RETURN, stmt);
+            token(stmt.keyword);
+            expression(stmt.value);
+            return null;
+        }
+
+        @Override
+        public Void visitClassStmt(Stmt.Class stmt) {
+            tag(CLASS, stmt);
+            token(stmt.name);
+            expression(stmt.superclass);
+            number(stmt.methods.size());
+            for (Stmt.Function method : stmt.methods) {
+                function(method);
+            }
+            number(stmt.superSlot);
+            declaration(stmt);
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            number(BINARY);
+            expression(expr.left);
+            token(expr.operator);
+            expression(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            number(GROUPING);
+            expression(expr.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            number(LITERAL);
+            Object value = expr.value;
+            if (value == null) {
+                number(NIL);
+            } else if (value instanceof Boolean) {
+                number((Boolean)value ? TRUE : FALSE);
+            } else if (value instanceof Double) {
+                number(NUMBER);
+                doubleValue((Double)value);
+            } else if (value instanceof String) {
+                number(STRING);
+                string((String)value);
+            } else {
+                throw new IllegalStateException("Can't cache a literal of " + value.getClass());
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            number(UNARY);
+            token(expr.operator);
+            expression(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitTernaryExpr(Expr.Ternary expr) {
+            number(TERNARY);
+            expression(expr.condition);
+            expression(expr.result);
+            expression(expr.altResult);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            number(VARIABLE);
+            token(expr.name);
+            resolution(expr);
+            return null;
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr) {
+            number(ASSIGN);
+            token(expr.name);
+            expression(expr.value);
+            resolution(expr);
+            return null;
+        }
+
+        @Override
+        public Void visitLogicalExpr(Expr.Logical expr) {
+            number(LOGICAL);
+            expression(expr.left);
+            token(expr.operator);
+            expression(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpr(Expr.Call expr) {
+            number(CALL);
+            expression(expr.callee);
+            token(expr.paren);
+            expressions(expr.arguments);
+            bool(expr.tail);
+            return null;
+        }
+
+        @Override
+        public Void visitGetExpr(Expr.Get expr) {
+            number(GET);
+            expression(expr.object);
+            token(expr.name);
+            return null;
+        }
+
+        @Override
+        public Void visitSetExpr(Expr.Set expr) {
+            number(SET);
+            expression(expr.object);
+            token(expr.name);
+            expression(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitThisExpr(Expr.This expr) {
+            number(THIS);
+            token(expr.keyword);
+            resolution(expr);
+            return null;
+        }
+
+        @Override
+        public Void visitSuperExpr(Expr.Super expr) {
+            number(SUPER);
+            token(expr.keyword);
+            token(expr.method);
+            resolution(expr);
+            resolution(expr.receiver);
+            return null;
+        }
+    }
+
+    private static class Reader {
+        private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<>();
+
+        Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        List<Stmt> statements() throws IOException {
+            int count = number();
+            List<Stmt> statements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                statements.add(statement());
+            }
+            return statements;
+        }
+
+        private Stmt statement() throws IOException {
+            int tag = number();
+            if (tag == NONE) return null;
+            int line = number();
+            Stmt stmt = statement(tag);
+            stmt.setLine(line);
+            return stmt;
+        }
+
+        private Stmt statement(int tag) throws IOException {
+            switch (tag) {
+                case EXPRESSION: return new Stmt.Expression(expression());
+                case FUNCTION: return function();
+                case PRINT: return new Stmt.Print(expression());
+                case VAR: return declaration(new Stmt.Var(token(), expression()));
+                case BLOCK: return new Stmt.Block(statements());
+                case IF: return new Stmt.If(expression(), statement(), statement());
+                case WHILE: return new Stmt.While(expression(), statement());
+                case BREAK: return new Stmt.Break(token());
+                case RETURN: return new Stmt.Return(token(), expression());
+                case CLASS: {
+                    Token name = token();
+                    Expr.Variable superclass = (Expr.Variable)expression();
+                    int count = number();
+                    List<Stmt.Function> methods = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        methods.add(function());
+                    }
+                    Stmt.Class stmt = new Stmt.Class(name, superclass, methods);
+                    stmt.setSuperSlot(number());
+                    return declaration(stmt);
+                }
+                default: throw new IOException("Unknown statement tag " + tag + ".");
+            }
+        }
+
+        private Stmt.Function function() throws IOException {
+            Token name = token();
+            int count = number();
+            List<Token> params = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                params.add(token());
+            }
+            Stmt.Function stmt = new Stmt.Function(name, params, statements());
+            stmt.setSlots(number());
+            stmt.setBoxedSlots(numbers());
+            boolean[] upvalueIsLocal = new boolean[number()];
+            for (int i = 0; i < upvalueIsLocal.length; i++) {
+                upvalueIsLocal[i] = bool();
+            }
+            stmt.setUpvalues(upvalueIsLocal, numbers());
+            return declaration(stmt);
+        }
+
+        private <T extends Stmt> T declaration(T stmt) throws IOException {
+            stmt.setSlot(number());
+            stmt.setCaptured(bool());
+            return stmt;
+        }
+
+        private Expr expression() throws IOException {
+            int tag = number();
+            switch (tag) {
+                case NONE: return null;
+                case BINARY: return new Expr.Binary(expression(), token(), expression());
+                case GROUPING: return new Expr.Grouping(expression());
+                case LITERAL: return new Expr.Literal(literal());
+                case UNARY: return new Expr.Unary(token(), expression());
+                case TERNARY: return new Expr.Ternary(expression(), expression(), expression());
+                case VARIABLE: return resolution(new Expr.Variable(token()));
+                case ASSIGN: return resolution(new Expr.Assign(token(), expression()));
+                case LOGICAL: return new Expr.Logical(expression(), token(), expression());
+                case CALL: {
+                    Expr.Call expr = new Expr.Call(expression(), token(), expressions());
+                    expr.setTail(bool());
+                    return expr;
+                }
+                case GET: return new Expr.Get(expression(), token());
+                case SET: return new Expr.Set(expression(), token(), expression());
+                case THIS: return resolution(new Expr.This(token()));
+                case SUPER: {
+                    Expr.Super expr = resolution(new Expr.Super(token(), token()));
+                    resolution(expr.receiver);
+                    return expr;
+                }
+                default: throw new IOException("Unknown expression tag " + tag + ".");
+            }
+        }
+
+        private List<Expr> expressions() throws IOException {
+            int count = number();
+            List<Expr> expressions = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                expressions.add(expression());
+            }
+            return expressions;
+        }
+
+        private <T extends Expr> T resolution(T expr) throws IOException {
+            expr.setDistance(number());
+            expr.setIndex(number());
+            return expr;
+        }
+
+        private Object literal() throws IOException {
+            int kind = number();
+            switch (kind) {
+                case NIL: return null;
+                case TRUE: return true;
+                case FALSE: return false;
+                case NUMBER: return in.readDouble();
+                case STRING: return string();
+                default: throw new IOException("Unknown literal kind " + kind + ".");
+            }
+        }
+
+        private Token token() throws IOException {
+            TokenType type = TOKEN_TYPES[number()];
+            String lexeme = string();
+            return new Token(type, lexeme, null, number());
+        }
+
+        private int[] numbers() throws IOException {
+            int[] values = new int[number()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = number();
+            }
+            return values;
+        }
+
+        private String string() throws IOException {
+            int id = number();
+            if (id < strings.size()) return strings.get(id);
+
+            byte[] bytes = new byte[number()];
+            in.readFully(bytes);
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            strings.add(value);
+            return value;
+        }
+
+        int number() throws IOException {
+            long bits = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = in.readUnsignedByte();
+                bits |= (long)(b & 0x7F) << shift;
+                if (b < 0x80) break;
+            }
+            return (int)(bits - 1);
+        }
+
+        private boolean bool() throws IOException {
+            return in.readUnsignedByte() != 0;
+        }
+    }
+}
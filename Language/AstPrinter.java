@@ -1,10 +1,15 @@
 package com.craftinginterpreters.language;
 
-class AstPrinter implements Expr.Visitor<String>{
+class AstPrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
     String print(Expr expr) {
         return expr.accept(this);
     }
 
+    // Statements are printed without the statements inside them, so a block or loop is only its header.
+    String print(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
     @Override
     public String visitBinaryExpr(Expr.Binary expr) {
         return parenthesize(expr.operator.lexeme, expr.left, expr.right);
@@ -33,35 +38,102 @@ class AstPrinter implements Expr.Visitor<String>{
 
     @Override
     public String visitVariableExpr(Expr.Variable expr) {
-        return expr.name.toString();
+        return expr.name.lexeme;
     }
 
     @Override
-    public String visitAssignExpr(Expr.Assign expr) { return expr.name.toString() + ", " + expr.value.toString(); }
+    public String visitAssignExpr(Expr.Assign expr) {
+        return parenthesize("= " + expr.name.lexeme, expr.value);
+    }
 
     @Override
-    public String visitLogicalExpr(Expr.Logical expr) { return expr.left.toString() + ", " + expr.operator.toString() + ", "
-    + expr.right.toString(); }
+    public String visitLogicalExpr(Expr.Logical expr) {
+        return parenthesize(expr.operator.lexeme, expr.left, expr.right);
+    }
 
     @Override
-    public String visitCallExpr(Expr.Call expr) {return expr.callee.toString() + ", " + expr.paren.toString() +
-            ", " + expr.arguments.toString(); }
+    public String visitCallExpr(Expr.Call expr) {
+        Expr[] parts = new Expr[expr.arguments.size() + 1];
+        parts[0] = expr.callee;
+        for (int i = 0; i < expr.arguments.size(); i++) {
+            parts[i + 1] = expr.arguments.get(i);
+        }
+        return parenthesize("call", parts);
+    }
 
     @Override
     public String visitGetExpr(Expr.Get expr) {
-        return expr.type;
+        return parenthesize(". " + expr.name.lexeme, expr.object);
     }
 
     @Override
     public String visitSetExpr(Expr.Set expr) {
-        return expr.type;
+        return parenthesize("= ." + expr.name.lexeme, expr.object, expr.value);
+    }
+
+    @Override
+    public String visitThisExpr(Expr.This expr) {
+        return "this";
+    }
+
+    @Override
+    public String visitSuperExpr(Expr.Super expr) {
+        return "(super " + expr.method.lexeme + ")";
+    }
+
+    @Override
+    public String visitExpressionStmt(Stmt.Expression stmt) {
+        return parenthesize(";", stmt.expression);
+    }
+
+    @Override
+    public String visitFunctionStmt(Stmt.Function stmt) {
+        return "(fun " + stmt.name.lexeme + ")";
+    }
+
+    @Override
+    public String visitPrintStmt(Stmt.Print stmt) {
+        return parenthesize("print", stmt.expression);
+    }
+
+    @Override
+    public String visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer == null) return "(var " + stmt.name.lexeme + ")";
+        return parenthesize("var " + stmt.name.lexeme, stmt.initializer);
+    }
+
+    @Override
+    public String visitBlockStmt(Stmt.Block stmt) {
+        return "(block)";
+    }
+
+    @Override
+    public String visitIfStmt(Stmt.If stmt) {
+        return parenthesize("if", stmt.condition);
+    }
+
+    @Override
+    public String visitWhileStmt(Stmt.While stmt) {
+        return parenthesize("while", stmt.condition);
+    }
+
+    @Override
+    public String visitBreakStmt(Stmt.Break stmt) {
+        return "(break)";
     }
 
     @Override
-    public String visitThisExpr(Expr.This expr) {return expr.type;}
+    public String visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null) return "(return)";
+        return parenthesize("return", stmt.value);
+    }
 
     @Override
-    public String visitSuperExpr(Expr.Super expr) {return expr.type;}
+    public String visitClassStmt(Stmt.Class stmt) {
+        if (stmt.superclass == null) return "(class " + stmt.name.lexeme + ")";
+        return "(class " + stmt.name.lexeme + " < " + stmt.superclass.name.lexeme + ")";
+    }
+
     /*
     @Override
     public String visitLambdaExpr(Expr.Lambda expr) {return expr.parameters.toString() + ", " + expr.body.toString();}
@@ -0,0 +1,11 @@
+package com.craftinginterpreters.language;
+
+// Box for a local variable that an inner function captures. The declaring frame and every closure that captured
+// the variable share the cell, so the frame itself never has to outlive its call.
+class Cell {
+    Object value;
+
+    Cell(Object value) {
+        this.value = value;
+    }
+}
@@ -0,0 +1,67 @@
+package com.craftinginterpreters.language;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// A compiled function body: the bytecode, its constant pool and a run-length encoded line table.
+class Chunk {
+    byte[] code = new byte[16];
+    int count = 0;
+    private final List<Object> constants = new ArrayList<>();
+    // Numbers, strings and names are deduplicated so every use of the same name or literal shares one pool entry.
+    private final Map<Object, Integer> constantIndices = new HashMap<>();
+    private Object[] constantPool;
+    // lineStarts[i] is the first offset whose instruction came from lineNumbers[i].
+    private int[] lineStarts = new int[8];
+    private int[] lineNumbers = new int[8];
+    private int lineCount = 0;
+
+    void write(byte value, int line) {
+        if (count == code.length) code = Arrays.copyOf(code, count * 2);
+        code[count] = value;
+
+        if (lineCount == 0 || lineNumbers[lineCount - 1] != line) {
+            if (lineCount == lineStarts.length) {
+                lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+                lineNumbers = Arrays.copyOf(lineNumbers, lineCount * 2);
+            }
+            lineStarts[lineCount] = count;
+            lineNumbers[lineCount] = line;
+            lineCount++;
+        }
+        count++;
+    }
+
+    int addConstant(Object value) {
+        boolean shareable = value instanceof Double || value instanceof String || value instanceof Symbol;
+        if (shareable) {
+            Integer existing = constantIndices.get(value);
+            if (existing != null) return existing;
+        }
+
+        constants.add(value);
+        int index = constants.size() - 1;
+        if (shareable) constantIndices.put(value, index);
+        return index;
+    }
+
+    // Called once compilation is done, so the VM can read constants from a plain array.
+    Object[] constants() {
+        if (constantPool == null) constantPool = constants.toArray();
+        return constantPool;
+    }
+
+    int getLine(int offset) {
+        int low = 0;
+        int high = lineCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (lineStarts[mid] <= offset) low = mid;
+            else high = mid - 1;
+        }
+        return lineCount == 0 ? 0 : lineNumbers[low];
+    }
+}
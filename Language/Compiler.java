@@ -0,0 +1,581 @@
+package com.craftinginterpreters.language;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Compiles resolved syntax trees into bytecode for the VM. The Resolver has already reported scope errors, so
+// this pass only has to lay out locals on the stack and work out which of them closures capture.
+class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static final int UINT8_COUNT = 256;
+
+    private enum FunctionType {
+        SCRIPT,
+        FUNCTION,
+        INITIALIZER,
+        METHOD
+    }
+
+    private static class Local {
+        final Symbol name;
+        final int depth;
+        boolean isCaptured = false;
+
+        Local(Symbol name, int depth) {
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+
+    private static class Upvalue {
+        final int index;
+        final boolean isLocal;
+
+        Upvalue(int index, boolean isLocal) {
+            this.index = index;
+            this.isLocal = isLocal;
+        }
+    }
+
+    private static class Loop {
+        final int scopeDepth;
+        final List<Integer> breakJumps = new ArrayList<>();
+
+        Loop(int scopeDepth) {
+            this.scopeDepth = scopeDepth;
+        }
+    }
+
+    // Compiler state for the function currently being compiled, linked to the functions it is nested in.
+    private static class FunctionState {
+        final FunctionState enclosing;
+        final VM.Function function;
+        final FunctionType type;
+        final List<Local> locals = new ArrayList<>();
+        final List<Upvalue> upvalues = new ArrayList<>();
+        final List<Loop> loops = new ArrayList<>();
+        int scopeDepth = 0;
+
+        FunctionState(FunctionState enclosing, VM.Function function, FunctionType type) {
+            this.enclosing = enclosing;
+            this.function = function;
+            this.type = type;
+            // Slot zero holds the callee, which methods expose as "this".
+            Symbol slotZero = type == FunctionType.METHOD || type == FunctionType.INITIALIZER ? Symbol.THIS : null;
+            locals.add(new Local(slotZero, 0));
+        }
+    }
+
+    private static class ClassState {
+        final ClassState enclosing;
+        boolean hasSuperclass = false;
+
+        ClassState(ClassState enclosing) {
+            this.enclosing = enclosing;
+        }
+    }
+
+    private final Context context;
+    private FunctionState current;
+    private ClassState currentClass;
+    private int line = 0;
+
+    Compiler(Context context) {
+        this.context = context;
+    }
+
+    VM.Function compile(List<Stmt> statements) {
+        current = new FunctionState(null, new VM.Function("script"), FunctionType.SCRIPT);
+        for (Stmt statement : statements) {
+            compile(statement);
+        }
+        emitReturn();
+        return endFunction();
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        compile(stmt.expression);
+        emit(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        line = stmt.name.line;
+        if (current.scopeDepth > 0) {
+            // Declared before the body is compiled so the function can refer to itself.
+            addLocal(stmt.name);
+            function(stmt, FunctionType.FUNCTION);
+        } else {
+            function(stmt, FunctionType.FUNCTION);
+            emitWithConstant(OpCode.DEFINE_GLOBAL, stmt.name.symbol);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        emit(OpCode.PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        line = stmt.name.line;
+        if (stmt.initializer != null) {
+            compile(stmt.initializer);
+        } else {
+            emit(OpCode.NIL);
+        }
+
+        if (current.scopeDepth > 0) {
+            // The initializer's value is already sitting in the new local's stack slot.
+            addLocal(stmt.name);
+        } else {
+            emitWithConstant(OpCode.DEFINE_GLOBAL, stmt.name.symbol);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        for (Stmt statement : stmt.statements) {
+            compile(statement);
+        }
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        compile(stmt.condition);
+        int thenJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emit(OpCode.POP);
+        compile(stmt.thenBranch);
+
+        int elseJump = emitJump(OpCode.JUMP);
+        patchJump(thenJump);
+        emit(OpCode.POP);
+        if (stmt.elseBranch != null) compile(stmt.elseBranch);
+        patchJump(elseJump);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        Loop loop = new Loop(current.scopeDepth);
+        current.loops.add(loop);
+
+        int loopStart = current.function.chunk.count;
+        compile(stmt.condition);
+        int exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emit(OpCode.POP);
+        compile(stmt.body);
+        emitLoop(loopStart);
+
+        patchJump(exitJump);
+        emit(OpCode.POP);
+
+        // Breaks leave the loop after the condition has already been popped.
+        for (int jump : loop.breakJumps) {
+            patchJump(jump);
+        }
+        current.loops.remove(current.loops.size() - 1);
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        line = stmt.keyword.line;
+        if (current.loops.isEmpty()) {
+            context.error(stmt.keyword, "Can't break outside of a loop.");
+            return null;
+        }
+        Loop loop = current.loops.get(current.loops.size() - 1);
+
+        // Discard the locals of every scope the break jumps out of, without forgetting them at compile time.
+        for (int i = current.locals.size() - 1; i >= 0 && current.locals.get(i).depth > loop.scopeDepth; i--) {
+            emit(current.locals.get(i).isCaptured ? OpCode.CLOSE_UPVALUE : OpCode.POP);
+        }
+        loop.breakJumps.add(emitJump(OpCode.JUMP));
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        line = stmt.keyword.line;
+        if (stmt.value == null) {
+            emitReturn();
+        } else {
+            compile(stmt.value);
+            emit(OpCode.RETURN);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        line = stmt.name.line;
+        int nameConstant = makeConstant(stmt.name.symbol);
+
+        if (current.scopeDepth > 0) addLocal(stmt.name);
+        emitWithOperand16(OpCode.CLASS, nameConstant);
+        if (current.scopeDepth == 0) emitWithOperand16(OpCode.DEFINE_GLOBAL, nameConstant);
+
+        ClassState classState = new ClassState(currentClass);
+        currentClass = classState;
+
+        if (stmt.superclass != null) {
+            compile(stmt.superclass);
+            beginScope();
+            addLocal(new Token(TokenType.SUPER, "super", null, line));
+            namedVariable(stmt.name, false);
+            emit(OpCode.INHERIT);
+            classState.hasSuperclass = true;
+        }
+
+        namedVariable(stmt.name, false);
+        for (Stmt.Function method : stmt.methods) {
+            line = method.name.line;
+            FunctionType type = method.name.symbol == Symbol.INIT ? FunctionType.INITIALIZER : FunctionType.METHOD;
+            function(method, type);
+            emitWithConstant(OpCode.METHOD, method.name.symbol);
+        }
+        emit(OpCode.POP);
+
+        if (classState.hasSuperclass) endScope();
+        currentClass = currentClass.enclosing;
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        compile(expr.left);
+        if (expr.operator.type == TokenType.COMMA) {
+            emit(OpCode.POP);
+            compile(expr.right);
+            return null;
+        }
+        compile(expr.right);
+
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case BANG_EQUAL: emit(OpCode.NOT_EQUAL); break;
+            case EQUAL_EQUAL: emit(OpCode.EQUAL); break;
+            case GREATER: emit(OpCode.GREATER); break;
+            case GREATER_EQUAL: emit(OpCode.GREATER_EQUAL); break;
+            case LESS: emit(OpCode.LESS); break;
+            case LESS_EQUAL: emit(OpCode.LESS_EQUAL); break;
+            case PLUS: emit(OpCode.ADD); break;
+            case MINUS: emit(OpCode.SUBTRACT); break;
+            case STAR: emit(OpCode.MULTIPLY); break;
+            case SLASH: emit(OpCode.DIVIDE); break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) emit(OpCode.NIL);
+        else if (expr.value.equals(Boolean.TRUE)) emit(OpCode.TRUE);
+        else if (expr.value.equals(Boolean.FALSE)) emit(OpCode.FALSE);
+        else emitWithConstant(OpCode.CONSTANT, expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+        line = expr.operator.line;
+        if (expr.operator.type == TokenType.BANG) emit(OpCode.NOT);
+        else emit(OpCode.NEGATE);
+        return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        // The tree-walker evaluates both arms before choosing one, and so does the VM.
+        compile(expr.condition);
+        compile(expr.result);
+        compile(expr.altResult);
+        emit(OpCode.TERNARY);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        namedVariable(expr.name, false);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        compile(expr.value);
+        namedVariable(expr.name, true);
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        compile(expr.left);
+        line = expr.operator.line;
+        if (expr.operator.type == TokenType.AND) {
+            int endJump = emitJump(OpCode.JUMP_IF_FALSE);
+            emit(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        } else {
+            int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+            int endJump = emitJump(OpCode.JUMP);
+            patchJump(elseJump);
+            emit(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        if (expr.callee instanceof Expr.Get) {
+            // Calling a method directly skips creating a bound method.
+            Expr.Get get = (Expr.Get)expr.callee;
+            compile(get.object);
+            int argCount = arguments(expr);
+            line = expr.paren.line;
+            emitWithConstant(OpCode.INVOKE, get.name.symbol);
+            emit((byte)argCount);
+            return null;
+        }
+        if (expr.callee instanceof Expr.Super) {
+            Expr.Super superExpr = (Expr.Super)expr.callee;
+            namedVariable(new Token(TokenType.THIS, "this", null, superExpr.keyword.line), false);
+            int argCount = arguments(expr);
+            namedVariable(superExpr.keyword, false);
+            line = expr.paren.line;
+            emitWithConstant(OpCode.SUPER_INVOKE, superExpr.method.symbol);
+            emit((byte)argCount);
+            return null;
+        }
+
+        compile(expr.callee);
+        int argCount = arguments(expr);
+        line = expr.paren.line;
+        emit(OpCode.CALL);
+        emit((byte)argCount);
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        compile(expr.object);
+        line = expr.name.line;
+        emitWithConstant(OpCode.GET_PROPERTY, expr.name.symbol);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        compile(expr.object);
+        compile(expr.value);
+        line = expr.name.line;
+        emitWithConstant(OpCode.SET_PROPERTY, expr.name.symbol);
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        namedVariable(expr.keyword, false);
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        namedVariable(new Token(TokenType.THIS, "this", null, expr.keyword.line), false);
+        namedVariable(expr.keyword, false);
+        line = expr.method.line;
+        emitWithConstant(OpCode.GET_SUPER, expr.method.symbol);
+        return null;
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    private int arguments(Expr.Call expr) {
+        for (Expr argument : expr.arguments) {
+            compile(argument);
+        }
+        return expr.arguments.size();
+    }
+
+    private void function(Stmt.Function stmt, FunctionType type) {
+        FunctionState function = new FunctionState(current, new VM.Function(stmt.name.lexeme), type);
+        current = function;
+        beginScope();
+        for (Token param : stmt.params) {
+            addLocal(param);
+        }
+        function.function.arity = stmt.params.size();
+        for (Stmt statement : stmt.body) {
+            compile(statement);
+        }
+        emitReturn();
+        endFunction();
+
+        emitWithConstant(OpCode.CLOSURE, function.function);
+        for (Upvalue upvalue : function.upvalues) {
+            emit(upvalue.isLocal ? (byte)1 : (byte)0);
+            emit((byte)upvalue.index);
+        }
+    }
+
+    private VM.Function endFunction() {
+        VM.Function function = current.function;
+        function.upvalueCount = current.upvalues.size();
+        current = current.enclosing;
+        return function;
+    }
+
+    private void beginScope() {
+        current.scopeDepth++;
+    }
+
+    private void endScope() {
+        current.scopeDepth--;
+        List<Local> locals = current.locals;
+        while (!locals.isEmpty() && locals.get(locals.size() - 1).depth > current.scopeDepth) {
+            emit(locals.get(locals.size() - 1).isCaptured ? OpCode.CLOSE_UPVALUE : OpCode.POP);
+            locals.remove(locals.size() - 1);
+        }
+    }
+
+    private void addLocal(Token name) {
+        if (current.locals.size() == UINT8_COUNT) {
+            context.error(name, "Too many local variables in function.");
+            return;
+        }
+        current.locals.add(new Local(name.symbol, current.scopeDepth));
+    }
+
+    private void namedVariable(Token name, boolean assign) {
+        line = name.line;
+        int arg = resolveLocal(current, name);
+        if (arg != -1) {
+            emit(assign ? OpCode.SET_LOCAL : OpCode.GET_LOCAL);
+            emit((byte)arg);
+        } else if ((arg = resolveUpvalue(current, name)) != -1) {
+            emit(assign ? OpCode.SET_UPVALUE : OpCode.GET_UPVALUE);
+            emit((byte)arg);
+        } else {
+            emitWithConstant(assign ? OpCode.SET_GLOBAL : OpCode.GET_GLOBAL, name.symbol);
+        }
+    }
+
+    private int resolveLocal(FunctionState state, Token name) {
+        for (int i = state.locals.size() - 1; i >= 0; i--) {
+            if (state.locals.get(i).name == name.symbol) return i;
+        }
+        return -1;
+    }
+
+    private int resolveUpvalue(FunctionState state, Token name) {
+        if (state.enclosing == null) return -1;
+
+        int local = resolveLocal(state.enclosing, name);
+        if (local != -1) {
+            state.enclosing.locals.get(local).isCaptured = true;
+            return addUpvalue(state, local, true, name);
+        }
+
+        int upvalue = resolveUpvalue(state.enclosing, name);
+        if (upvalue != -1) return addUpvalue(state, upvalue, false, name);
+
+        return -1;
+    }
+
+    private int addUpvalue(FunctionState state, int index, boolean isLocal, Token name) {
+        for (int i = 0; i < state.upvalues.size(); i++) {
+            Upvalue upvalue = state.upvalues.get(i);
+            if (upvalue.index == index && upvalue.isLocal == isLocal) return i;
+        }
+
+        if (state.upvalues.size() == UINT8_COUNT) {
+            context.error(name, "Too many closure variables in function.");
+            return 0;
+        }
+        state.upvalues.add(new Upvalue(index, isLocal));
+        return state.upvalues.size() - 1;
+    }
+
+    private void emit(byte value) {
+        current.function.chunk.write(value, line);
+    }
+
+    private void emitReturn() {
+        if (current.type == FunctionType.INITIALIZER) {
+            emit(OpCode.GET_LOCAL);
+            emit((byte)0);
+        } else {
+            emit(OpCode.NIL);
+        }
+        emit(OpCode.RETURN);
+    }
+
+    private int makeConstant(Object value) {
+        int constant = current.function.chunk.addConstant(value);
+        if (constant > 0xffff) {
+            context.syntaxReport(line, "", "Too many constants in one chunk.");
+            return 0;
+        }
+        return constant;
+    }
+
+    private void emitWithConstant(byte op, Object value) {
+        emitWithOperand16(op, makeConstant(value));
+    }
+
+    private void emitWithOperand16(byte op, int operand) {
+        emit(op);
+        emit((byte)((operand >> 8) & 0xff));
+        emit((byte)(operand & 0xff));
+    }
+
+    private int emitJump(byte op) {
+        emit(op);
+        emit((byte)0xff);
+        emit((byte)0xff);
+        return current.function.chunk.count - 2;
+    }
+
+    private void patchJump(int offset) {
+        // -2 to adjust for the bytecode of the jump offset itself.
+        int jump = current.function.chunk.count - offset - 2;
+        if (jump > 0xffff) {
+            context.syntaxReport(line, "", "Too much code to jump over.");
+        }
+        byte[] code = current.function.chunk.code;
+        code[offset] = (byte)((jump >> 8) & 0xff);
+        code[offset + 1] = (byte)(jump & 0xff);
+    }
+
+    private void emitLoop(int loopStart) {
+        emit(OpCode.LOOP);
+        int offset = current.function.chunk.count - loopStart + 2;
+        if (offset > 0xffff) context.syntaxReport(line, "", "Loop body too large.");
+        emit((byte)((offset >> 8) & 0xff));
+        emit((byte)(offset & 0xff));
+    }
+}
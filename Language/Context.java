@@ -0,0 +1,71 @@
+package com.craftinginterpreters.language;
+
+import java.io.PrintStream;
+
+// Where one run of a script prints, where it reports its errors, and whether it has had any. Every stage from
+// the Scanner to the Interpreter is given one, and nothing else is shared between runs beyond the interned
+// Symbols, so scripts with contexts of their own can run on different threads at the same time.
+class Context {
+    final PrintStream out;
+    final PrintStream err;
+    boolean hadError = false;
+    boolean hadWarning = false;
+    boolean hadRuntimeError = false;
+    // Set by --jfr to emit Flight Recorder events for calls, instantiations and runtime errors.
+    boolean recordEvents = false;
+
+    Context() {
+        this(System.out, System.err);
+    }
+
+    Context(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    // For problems that are reported but don't stop the script from running.
+    void warning(String message) {
+        err.println(message);
+        hadWarning = true;
+    }
+
+    void error(int line, int column, String where, String message) {
+        report(line, column, where, message);
+    }
+
+    private void report(int line, int column, String where, String message) {
+        err.println("Error: " + message + "\n" + "Line " + line + "| " + where);
+        // The preceding text "Line x| " is 8 spaces, so count must start from there rather than the beginning.
+        for (int i = 0; i < column + 8; i++) {
+            err.print(" ");
+        }
+        err.print("^" + "\n");
+        hadError = true;
+    }
+
+    void syntaxReport(int line, String where, String message) {
+        err.println("Error: " + message + "\n" + "Line " + line + "| " + where);
+        hadError = true;
+    }
+
+    void error(Token token, String message) {
+        if (token.type == TokenType.EOF) {
+            syntaxReport(token.line, " at end", message);
+        } else {
+            syntaxReport(token.line, " at '" + token.text() + "'", message);
+        }
+    }
+
+    void runtimeError(RuntimeError error) {
+        err.println(error.getMessage() + "\n[line " + error.token.line + "]");
+        hadRuntimeError = true;
+        if (recordEvents) Events.runtimeError(error);
+    }
+
+    // Clears the flags between lines typed at the prompt.
+    void reset() {
+        hadError = false;
+        hadWarning = false;
+        hadRuntimeError = false;
+    }
+}
@@ -1,92 +1,61 @@
 package com.craftinginterpreters.language;
 
+import java.util.HashMap;
+import java.util.Map;
+
+// The global scope. Locals never get here: the Resolver places them in flat per-call frames, and the only ones
+// that outlive their call are the captured ones, which are boxed into cells.
+//
+// A script run through javax.script has its engine scope bindings as its globals, read and written in place so
+// that the host sees what the script defines and the script sees what the host changes. Natives are only looked
+// up once neither has the name, so globals of the same name hide them.
 class Environment {
-    final Environment enclosing;
-    // Storing values as a list of tuples (String name and the Object it "maps" to).
-    private final Object[][] values = new Object[1000][2];
-    private int counter = 0;
+    private final Map<Symbol, Object> values = new HashMap<>();
+    private final Map<String, Object> bindings;
+    private final NativeRegistry natives;
 
-    Environment() {
-        enclosing = null;
-    }
-
-    Environment(Environment enclosing) {
-        this.enclosing = enclosing;
+    Environment(Map<String, Object> bindings, NativeRegistry natives) {
+        this.bindings = bindings;
+        this.natives = natives;
     }
 
     Object get(Token name) {
-        int i = 0;
-        while (values[i][0] != null && i < 1000) {
-            if (values[i][0].equals(name.lexeme)) {
-                return values[i][1];
-            }
-            i++;
+        if (bindings != null) {
+            Object value = bindings.get(name.lexeme);
+            if (value != null || bindings.containsKey(name.lexeme)) return fromJava(value);
         }
-
-        if (enclosing != null) return enclosing.get(name);
+        Object value = values.get(name.symbol);
+        if (value != null || values.containsKey(name.symbol)) return value;
+        NativeFunction function = natives.get(name.symbol);
+        if (function != null) return function;
 
         throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
     }
 
     void assign(Token name, Object value) {
-        int i = 0;
-        while (values[i][0] != null && i < 1000) {
-            if (values[i][0].equals(name.lexeme)) {
-                values[i][1] = value;
-                return;
-            }
-            i++;
+        if (bindings != null && bindings.containsKey(name.lexeme)) {
+            bindings.put(name.lexeme, value);
+            return;
+        }
+        if (values.containsKey(name.symbol) || natives.get(name.symbol) != null) {
+            values.put(name.symbol, value);
+            return;
         }
 
-        if (enclosing != null) enclosing.assign(name, value);
         throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
     }
 
-    void define(String name, Object value) {
-        int ourValue = inList(name);
-        if (ourValue != -1) {
-            values[ourValue][1] = value;
-        }
-        else {
-            values[counter][0] = name;
-            values[counter][1] = value;
-            counter++;
-        }
-    }
-
-    int inList(String name) {
-        int i = 0;
-        while (values[i][0] != null && i < 1000) {
-            if (values[i][0].equals(name)) {
-                return i;
-            }
-            i++;
-        }
-
-        if (enclosing != null) {
-            return this.enclosing.inList(name);
+    void define(Symbol name, Object value) {
+        if (bindings != null) {
+            bindings.put(name.name, value);
+        } else {
+            values.put(name, value);
         }
-        return -1;
-    }
-
-    Object getAt(int distance, int index) {
-        return ancestor(distance).values[index][1];
-    }
-
-    Object getAt(int distance, String name) {
-        return ancestor(distance).get(new Token(TokenType.STRING, name, "", 0));
     }
 
-    void assignAt(int distance, int index, Token name, Object value) {
-        ancestor(distance).values[index] = new Object[]{name.lexeme, value};
-    }
-
-    Environment ancestor(int distance) {
-        Environment environment = this;
-        for (int i = 0; i < distance; i++) {
-            environment = environment.enclosing;
-        }
-
-        return environment;
+    // Lox has only the one kind of number, so any other Number a host hands over becomes a Double.
+    static Object fromJava(Object value) {
+        if (value instanceof Number && !(value instanceof Double)) return ((Number)value).doubleValue();
+        return value;
     }
 }
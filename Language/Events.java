@@ -0,0 +1,103 @@
+package com.craftinginterpreters.language;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// JDK Flight Recorder events for what a script is doing, so that a recording shows its calls, instantiations,
+// errors and phases instead of only Interpreter frames. They are only created at all when --jfr is given, and
+// only committed when a recording has them enabled.
+class Events {
+    private static final String CATEGORY = "Lox";
+
+    @Name("jlox.Call")
+    @Label("Function Call")
+    @Category(CATEGORY)
+    @Description("A call to a Lox function or method, from the call to its return")
+    static class Call extends Event {
+        @Label("Function")
+        String function;
+        @Label("Line")
+        int line;
+
+        void finish(Stmt.Function declaration) {
+            end();
+            if (!shouldCommit()) return;
+            function = declaration.name.lexeme;
+            line = declaration.name.line;
+            commit();
+        }
+    }
+
+    @Name("jlox.Instantiation")
+    @Label("Instantiation")
+    @Category(CATEGORY)
+    @Description("A class called to make an instance, including its initializer")
+    static class Instantiation extends Event {
+        @Label("Class")
+        String className;
+
+        void finish(LanguageClass klass) {
+            end();
+            if (!shouldCommit()) return;
+            className = klass.name;
+            commit();
+        }
+    }
+
+    @Name("jlox.RuntimeError")
+    @Label("Runtime Error")
+    @Category(CATEGORY)
+    @Description("A runtime error that stopped a script")
+    static class ScriptError extends Event {
+        @Label("Message")
+        String message;
+        @Label("Line")
+        int line;
+    }
+
+    @Name("jlox.Phase")
+    @Label("Phase")
+    @Category(CATEGORY)
+    @Description("One step in getting from source to a finished run: loading the cached tree, scanning and " +
+            "parsing, resolving, optimizing, compiling or executing")
+    static class Phase extends Event {
+        @Label("Phase")
+        String phase;
+
+        void finish(String phase) {
+            end();
+            if (!shouldCommit()) return;
+            this.phase = phase;
+            commit();
+        }
+    }
+
+    static Call call() {
+        Call event = new Call();
+        event.begin();
+        return event;
+    }
+
+    static Instantiation instantiation() {
+        Instantiation event = new Instantiation();
+        event.begin();
+        return event;
+    }
+
+    static Phase phase() {
+        Phase event = new Phase();
+        event.begin();
+        return event;
+    }
+
+    static void runtimeError(RuntimeError error) {
+        ScriptError event = new ScriptError();
+        if (!event.isEnabled()) return;
+        event.message = error.getMessage();
+        event.line = error.token.line;
+        event.commit();
+    }
+}
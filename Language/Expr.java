@@ -20,9 +20,12 @@ abstract class Expr {
        // R visitLambdaExpr(Lambda expr);
     }
 
+    // Child expressions aren't final so that the Optimizer can replace them with simpler ones after resolution.
     String type;
-    Integer index = -1;
-    Integer distance = -1;
+    // Where the Resolver found the variable this expression refers to: distance 0 is a slot in the current frame,
+    // a positive distance an upvalue index in the current closure, and -1 a global.
+    int index = -1;
+    int distance = -1;
 
     void setDistance(int distance) {
         this.distance = distance;
@@ -32,6 +35,12 @@ abstract class Expr {
         this.index = index;
     }
 
+    // What a Binary or Unary node has seen its operands be so far. A node starts out uninitialized, settles on
+    // numbers or strings the first time it runs, and falls back to generic for good once it sees anything else.
+    enum Specialization {
+        UNINITIALIZED, NUMBER, STRING, GENERIC
+    }
+
     static class Binary extends Expr {
         Binary(Expr left, Token operator, Expr right) {
             this.left = left;
@@ -45,9 +54,10 @@ abstract class Expr {
             return visitor.visitBinaryExpr(this);
         }
 
-        final Expr left;
+        Expr left;
         final Token operator;
-        final Expr right;
+        Expr right;
+        Specialization specialization = Specialization.UNINITIALIZED;
     }
     static class Grouping extends Expr {
         Grouping(Expr expression) {
@@ -59,7 +69,7 @@ abstract class Expr {
             return visitor.visitGroupingExpr(this);
         }
 
-        final Expr expression;
+        Expr expression;
     }
     static class Literal extends Expr {
         Literal(Object value) {
@@ -86,7 +96,8 @@ abstract class Expr {
         }
 
         final Token operator;
-        final Expr right;
+        Expr right;
+        Specialization specialization = Specialization.UNINITIALIZED;
     }
     static class Ternary extends Expr {
         Ternary(Expr condition, Expr result, Expr altResult) {
@@ -99,9 +110,9 @@ abstract class Expr {
         @Override
         <R> R accept(Visitor<R> visitor) { return visitor.visitTernaryExpr(this); }
 
-        final Expr condition;
-        final Expr result;
-        final Expr altResult;
+        Expr condition;
+        Expr result;
+        Expr altResult;
     }
 
     static class Variable extends Expr {
@@ -131,7 +142,7 @@ abstract class Expr {
         }
 
         final Token name;
-        final Expr value;
+        Expr value;
     }
 
     static class Logical extends Expr {
@@ -147,9 +158,9 @@ abstract class Expr {
             return visitor.visitLogicalExpr(this);
         }
 
-        final Expr left;
+        Expr left;
         final Token operator;
-        final Expr right;
+        Expr right;
     }
 
     static class Call extends Expr {
@@ -165,9 +176,15 @@ abstract class Expr {
             return visitor.visitCallExpr(this);
         }
 
-        final Expr callee;
+        // Set by the Resolver on a call that is the value of a return statement.
+        void setTail(boolean tail) {
+            this.tail = tail;
+        }
+
+        Expr callee;
         final Token paren;
         final List<Expr> arguments;
+        boolean tail = false;
     }
     /*
     static class Lambda extends Expr implements LanguageCallable {
@@ -194,8 +211,9 @@ abstract class Expr {
             return visitor.visitGetExpr(this);
         }
 
-        final Expr object;
+        Expr object;
         final Token name;
+        final PropertyCache cache = new PropertyCache();
     }
 
     static class Set extends Expr {
@@ -211,9 +229,10 @@ abstract class Expr {
             return visitor.visitSetExpr(this);
         }
 
-        final Expr object;
+        Expr object;
         final Token name;
-        final Expr value;
+        Expr value;
+        final PropertyCache cache = new PropertyCache();
     }
 
     static class This extends Expr {
@@ -234,6 +253,7 @@ abstract class Expr {
         Super(Token keyword, Token method) {
             this.keyword = keyword;
             this.method = method;
+            this.receiver = new This(new Token(TokenType.THIS, "this", null, keyword.line));
             type = "super";
         }
 
@@ -244,6 +264,8 @@ abstract class Expr {
 
         final Token keyword;
         final Token method;
+        // Resolved separately so the method can be bound to the current "this".
+        final This receiver;
     }
 
     abstract <R> R accept(Visitor <R> visitor);
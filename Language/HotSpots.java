@@ -0,0 +1,176 @@
+package com.craftinginterpreters.language;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Counts how many times each statement and expression runs, and optionally what types of value each expression
+// produced, then reports the hottest nodes and which statements never ran at all. Set up by --hotspots, or by
+// --hotspots=types to profile types as well.
+class HotSpots {
+    private static final int REPORTED_NODES = 25;
+    private static final int RENDERED_LENGTH = 48;
+    private static final String[] TYPES = {"nil", "boolean", "number", "string", "function", "class", "instance"};
+
+    private static class Count {
+        final int line;
+        long runs = 0;
+        final long[] types;
+
+        Count(int line, boolean profileTypes) {
+            this.line = line;
+            this.types = profileTypes ? new long[TYPES.length] : null;
+        }
+    }
+
+    private final boolean profileTypes;
+    private final Map<Object, Count> counts = new IdentityHashMap<>();
+    // Every statement of the program, run or not, for the coverage part of the report.
+    private final List<Stmt> statements = new ArrayList<>();
+    // Line of the statement that ran last, for expressions without a token to take a line from.
+    private int line = 0;
+
+    HotSpots(boolean profileTypes) {
+        this.profileTypes = profileTypes;
+    }
+
+    // Notes every statement in the program, so that those that never run can be reported too.
+    void watch(List<Stmt> program) {
+        for (Stmt stmt : program) {
+            watch(stmt);
+        }
+    }
+
+    private void watch(Stmt stmt) {
+        if (stmt == null) return;
+        statements.add(stmt);
+        if (stmt instanceof Stmt.Block) {
+            watch(((Stmt.Block)stmt).statements);
+        } else if (stmt instanceof Stmt.Function) {
+            watch(((Stmt.Function)stmt).body);
+        } else if (stmt instanceof Stmt.Class) {
+            for (Stmt.Function method : ((Stmt.Class)stmt).methods) {
+                watch(method.body);
+            }
+        } else if (stmt instanceof Stmt.If) {
+            watch(((Stmt.If)stmt).thenBranch);
+            watch(((Stmt.If)stmt).elseBranch);
+        } else if (stmt instanceof Stmt.While) {
+            watch(((Stmt.While)stmt).body);
+        }
+    }
+
+    void executed(Stmt stmt) {
+        if (stmt.line != 0) line = stmt.line;
+        Count count = counts.get(stmt);
+        if (count == null) {
+            count = new Count(line, false);
+            counts.put(stmt, count);
+        }
+        count.runs++;
+    }
+
+    void evaluated(Expr expr, Object value) {
+        Count count = counts.get(expr);
+        if (count == null) {
+            int exprLine = lineOf(expr);
+            count = new Count(exprLine == 0 ? line : exprLine, profileTypes);
+            counts.put(expr, count);
+        }
+        count.runs++;
+        if (count.types == null) return;
+        // A call in tail position evaluates to the TailCall its function runs once this frame has returned, so its
+        // value isn't known here and it has no type to count.
+        int type = typeOf(value);
+        if (type != -1) count.types[type]++;
+    }
+
+    // The index in TYPES of a Lox value's type, or -1 for anything that isn't one.
+    private static int typeOf(Object value) {
+        if (value == null) return 0;
+        if (value instanceof Boolean) return 1;
+        if (value instanceof Double) return 2;
+        if (value instanceof String) return 3;
+        if (value instanceof LanguageClass) return 5;
+        if (value instanceof LanguageInstance) return 6;
+        if (value instanceof LanguageCallable || value instanceof NativeFunction) return 4;
+        return -1;
+    }
+
+    private static int lineOf(Expr expr) {
+        if (expr instanceof Expr.Binary) return ((Expr.Binary)expr).operator.line;
+        if (expr instanceof Expr.Grouping) return lineOf(((Expr.Grouping)expr).expression);
+        if (expr instanceof Expr.Unary) return ((Expr.Unary)expr).operator.line;
+        if (expr instanceof Expr.Ternary) return lineOf(((Expr.Ternary)expr).condition);
+        if (expr instanceof Expr.Variable) return ((Expr.Variable)expr).name.line;
+        if (expr instanceof Expr.Assign) return ((Expr.Assign)expr).name.line;
+        if (expr instanceof Expr.Logical) return ((Expr.Logical)expr).operator.line;
+        if (expr instanceof Expr.Call) return ((Expr.Call)expr).paren.line;
+        if (expr instanceof Expr.Get) return ((Expr.Get)expr).name.line;
+        if (expr instanceof Expr.Set) return ((Expr.Set)expr).name.line;
+        if (expr instanceof Expr.This) return ((Expr.This)expr).keyword.line;
+        if (expr instanceof Expr.Super) return ((Expr.Super)expr).keyword.line;
+        // Literals have no token of their own.
+        return 0;
+    }
+
+    void report(PrintStream out) {
+        AstPrinter printer = new AstPrinter();
+        List<Map.Entry<Object, Count>> hottest = new ArrayList<>(counts.entrySet());
+        hottest.sort((a, b) -> Long.compare(b.getValue().runs, a.getValue().runs));
+
+        out.println(String.format("%12s %6s  %-10s %-" + RENDERED_LENGTH + "s %s", "Runs", "Line", "Node", "Code",
+                profileTypes ? "Types" : ""));
+        for (Map.Entry<Object, Count> entry : hottest.subList(0, Math.min(REPORTED_NODES, hottest.size()))) {
+            Object node = entry.getKey();
+            Count count = entry.getValue();
+            String code = node instanceof Stmt ? printer.print((Stmt)node) : printer.print((Expr)node);
+            if (code.length() > RENDERED_LENGTH) code = code.substring(0, RENDERED_LENGTH - 3) + "...";
+            out.println(String.format("%12d %6d  %-10s %-" + RENDERED_LENGTH + "s %s", count.runs, count.line,
+                    node.getClass().getSimpleName(), code, types(count)));
+        }
+
+        int run = 0;
+        Set<Integer> ranLines = new HashSet<>();
+        for (Stmt stmt : statements) {
+            if (counts.containsKey(stmt)) {
+                run++;
+                ranLines.add(stmt.line);
+            }
+        }
+        // Only lines where nothing at all ran, so an if whose branch was skipped doesn't list its own line.
+        Set<Integer> neverRun = new TreeSet<>();
+        for (Stmt stmt : statements) {
+            if (stmt.line != 0 && !ranLines.contains(stmt.line)) neverRun.add(stmt.line);
+        }
+        out.println();
+        out.println(String.format("Statements run: %d of %d (%.1f%%)", run, statements.size(),
+                statements.isEmpty() ? 100.0 : 100.0 * run / statements.size()));
+        if (!neverRun.isEmpty()) out.println("Lines where nothing ran: " + neverRun);
+    }
+
+    // The share of each type of value the expression produced, most common first, out of the runs whose value had
+    // a type.
+    private static String types(Count count) {
+        if (count.types == null) return "";
+        List<Integer> seen = new ArrayList<>();
+        long typed = 0;
+        for (int i = 0; i < TYPES.length; i++) {
+            if (count.types[i] > 0) seen.add(i);
+            typed += count.types[i];
+        }
+        seen.sort((a, b) -> Long.compare(count.types[b], count.types[a]));
+
+        StringBuilder text = new StringBuilder();
+        for (int type : seen) {
+            if (text.length() > 0) text.append(", ");
+            text.append(String.format("%s %.0f%%", TYPES[type], 100.0 * count.types[type] / typed));
+        }
+        return text.toString();
+    }
+}
@@ -1,82 +1,171 @@
 package com.craftinginterpreters.language;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.HashMap;
 import java.util.Map;
 
-class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
-
-    final Environment globals = new Environment();
-    private Environment environment = globals;
-    private static final Map<Expr, Integer[]> locals = new HashMap<>();
-    private static boolean isBreak = false;
+class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Interpreter.Completion> {
+    // How a statement finished. Return and break unwind by handing this back up through the statements that
+    // enclose them, rather than by throwing, until a function call or the innermost loop consumes it.
+    enum Completion {
+        NORMAL, BREAK, RETURN
+    }
 
-    Interpreter() {
-        globals.define("clock", new LanguageCallable() {
-            @Override
-            public int arity() {return 0;}
+    final Context context;
+    final Environment globals;
+    // Locals of every active call share one stack. A call's frame starts at base and is handed back on return,
+    // since anything a closure needs to keep has been moved into a Cell.
+    private Object[] stack = new Object[256];
+    private int base = 0;
+    private int top = 0;
+    private int scriptSlots = 0;
+    private Cell[] upvalues = new Cell[0];
+    // The value of the return statement that is currently unwinding.
+    private Object returnValue = null;
+    // Set by --profile. Calls and statements only tell it where they are while one is attached.
+    Profiler profiler = null;
+    // Set by --hotspots. Every statement and expression reports to it after running while one is attached.
+    HotSpots hotSpots = null;
 
-            @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
-                return (double)System.currentTimeMillis() / 1000.0;
-            }
+    Interpreter(Context context) {
+        this(context, null, NativeRegistry.builtins());
+    }
 
-            @Override
-            public String toString() { return "<native fn>"; }
-        });
+    // Given bindings, the script's globals are kept in them rather than in a map of the interpreter's own.
+    Interpreter(Context context, Map<String, Object> bindings, NativeRegistry natives) {
+        this.context = context;
+        this.globals = new Environment(bindings, natives);
     }
 
     void interpret(List<Stmt> statements) {
+        // Locals in top-level blocks live in the script's own frame at the bottom of the stack.
+        base = 0;
+        top = scriptSlots;
+        ensureStack(top);
         try {
             for (Stmt statement : statements) {
                 execute(statement);
             }
         } catch (RuntimeError error) {
-            Language.runtimeError(error);
+            context.runtimeError(error);
+        } finally {
+            Arrays.fill(stack, 0, top, null);
+            base = 0;
+            top = 0;
+        }
+    }
+
+    // Runs a prepared script for the embedding API, which wants runtime errors thrown rather than reported. The
+    // value of result, if there is one, is what the script produces once its statements have run.
+    Object run(List<Stmt> statements, Expr result) {
+        base = 0;
+        top = scriptSlots;
+        ensureStack(top);
+        try {
+            for (Stmt statement : statements) {
+                execute(statement);
+            }
+            return result == null ? null : evaluate(result);
+        } finally {
+            Arrays.fill(stack, 0, top, null);
+            base = 0;
+            top = 0;
         }
     }
 
     void interpretEx(Expr expression) {
         try {
             Object value = evaluate(expression);
-            System.out.println(stringify(value));
+            context.out.println(stringify(value));
         } catch (RuntimeError error) {
-            Language.runtimeError(error);
+            context.runtimeError(error);
         }
     }
 
-    private void execute(Stmt stmt) {
-        if (stmt.type.equals("break")) isBreak = true;
-        stmt.accept(this);
+    private Completion execute(Stmt stmt) {
+        if (profiler != null && stmt.line != 0) profiler.line(stmt.line);
+        if (hotSpots != null) hotSpots.executed(stmt);
+        return stmt.accept(this);
     }
 
-    void resolve(Expr expr, int depth, int index) {
-        Integer[] locations = {depth, index};
-        locals.put(expr, locations);
+    void reserveScriptSlots(int slots) {
+        scriptSlots = slots;
     }
 
-    void executeBlock(List<Stmt> statements, Environment environment) {
-        Environment previous = this.environment;
-        try {
-            this.environment = environment;
+    Object executeFunction(Stmt.Function declaration, Cell[] closure, Object receiver, Object[] arguments) {
+        int previousBase = base;
+        int previousTop = top;
+        Cell[] previousUpvalues = upvalues;
 
-            for (Stmt statement : statements) {
-                execute(statement);
+        int frame = top;
+        ensureStack(frame + declaration.slots);
+        int slot = frame;
+        if (receiver != null) stack[slot++] = receiver;
+        System.arraycopy(arguments, 0, stack, slot, arguments.length);
+        for (int boxed : declaration.boxedSlots) {
+            stack[frame + boxed] = new Cell(stack[frame + boxed]);
+        }
+
+        base = frame;
+        top = frame + declaration.slots;
+        upvalues = closure;
+        if (profiler != null) profiler.enter(profiler.site(declaration));
+        Events.Call event = context.recordEvents ? Events.call() : null;
+        try {
+            for (Stmt statement : declaration.body) {
+                if (execute(statement) == Completion.RETURN) {
+                    Object value = returnValue;
+                    returnValue = null;
+                    return value;
+                }
             }
+            return null;
         } finally {
-            this.environment = previous;
+            if (event != null) event.finish(declaration);
+            if (profiler != null) profiler.exit();
+            Arrays.fill(stack, frame, top, null);
+            base = previousBase;
+            top = previousTop;
+            upvalues = previousUpvalues;
+        }
+    }
+
+    private void ensureStack(int size) {
+        if (size > stack.length) stack = Arrays.copyOf(stack, Math.max(size, stack.length * 2));
+    }
+
+    private Cell[] captureUpvalues(Stmt.Function declaration) {
+        Cell[] captured = new Cell[declaration.upvalueIndices.length];
+        for (int i = 0; i < captured.length; i++) {
+            int index = declaration.upvalueIndices[i];
+            captured[i] = declaration.upvalueIsLocal[i] ? (Cell)stack[base + index] : upvalues[index];
+        }
+        return captured;
+    }
+
+    // Stores the value a Var, Function or Class statement declares into its slot or, at top level, a global.
+    private void define(Stmt declaration, Token name, Object value) {
+        if (declaration.slot == -1) {
+            globals.define(name.symbol, value);
+        } else if (declaration.captured) {
+            stack[base + declaration.slot] = new Cell(value);
+        } else {
+            stack[base + declaration.slot] = value;
         }
     }
 
     @Override
-    public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
-        return null;
+    public Completion visitBlockStmt(Stmt.Block stmt) {
+        for (Stmt statement : stmt.statements) {
+            Completion completion = execute(statement);
+            if (completion != Completion.NORMAL) return completion;
+        }
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitClassStmt(Stmt.Class stmt) {
+    public Completion visitClassStmt(Stmt.Class stmt) {
         Object superclass = null;
         if (stmt.superclass != null) {
             superclass = evaluate(stmt.superclass);
@@ -85,27 +174,27 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             }
         }
 
-        environment.define(stmt.name.lexeme, null);
+        // Defined before the methods are created so they can capture the class's own name.
+        define(stmt, stmt.name, null);
 
         if (stmt.superclass != null) {
-            environment = new Environment(environment);
-            environment.define("super", superclass);
+            stack[base + stmt.superSlot] = new Cell(superclass);
         }
 
-        Map<String, LanguageFunction> methods = new HashMap<>();
+        if (profiler != null) profiler.nameMethods(stmt);
+        Map<Symbol, LanguageFunction> methods = new HashMap<>();
         for (Stmt.Function method : stmt.methods) {
-            LanguageFunction function = new LanguageFunction(method, environment, method.name.lexeme.equals("init"));
-            methods.put(method.name.lexeme, function);
+            LanguageFunction function = new LanguageFunction(method, captureUpvalues(method),
+                    method.name.symbol == Symbol.INIT);
+            methods.put(method.name.symbol, function);
         }
 
         LanguageClass klass = new LanguageClass(stmt.name.lexeme, (LanguageClass)superclass, methods);
 
-        if (superclass != null) {
-            environment = environment.enclosing;
-        }
-
-        environment.assign(stmt.name, klass);
-        return null;
+        if (stmt.slot == -1) globals.assign(stmt.name, klass);
+        else if (stmt.captured) ((Cell)stack[base + stmt.slot]).value = klass;
+        else stack[base + stmt.slot] = klass;
+        return Completion.NORMAL;
     }
 
     @Override
@@ -135,22 +224,34 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
 
         Object value = evaluate(expr.value);
-        ((LanguageInstance)object).set(expr.name, value);
+        LanguageInstance instance = (LanguageInstance)object;
+        PropertyCache.Entry entry = expr.cache.find(instance.shape);
+        if (entry != null) {
+            if (entry.target != instance.shape) instance.reshape(entry.target);
+            instance.fields[entry.slot] = value;
+            return value;
+        }
+
+        Shape shape = instance.shape;
+        instance.set(expr.name, value);
+        expr.cache.add(shape, instance.shape, instance.shape.slotOf(expr.name.symbol), null);
         return value;
     }
 
     @Override
     public Object visitSuperExpr(Expr.Super expr) {
-        int distance = locals.get(expr)[0];
-        LanguageClass superclass = (LanguageClass)environment.getAt(distance, "super");
-        LanguageInstance object = (LanguageInstance)environment.getAt(distance - 1, "this");
-        LanguageFunction method = superclass.findMethod(expr.method.lexeme);
+        LanguageInstance object = (LanguageInstance)lookUpVariable(expr.receiver.keyword, expr.receiver);
+        return superMethod(expr).bind(object);
+    }
+
+    private LanguageFunction superMethod(Expr.Super expr) {
+        LanguageClass superclass = (LanguageClass)lookUpVariable(expr.keyword, expr);
+        LanguageFunction method = superclass.findMethod(expr.method.symbol);
 
         if (method == null) {
             throw new RuntimeError(expr.method, "Undefined property '" + expr.method.lexeme + "'.");
         }
-
-        return method.bind(object);
+        return method;
     }
 
     @Override
@@ -160,7 +261,13 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
+        if (expr.specialization == Expr.Specialization.NUMBER) return negate(expr);
+
         Object right = evaluate(expr.right);
+        if (expr.specialization == Expr.Specialization.UNINITIALIZED) {
+            expr.specialization = expr.operator.type == TokenType.MINUS && right instanceof Double
+                    ? Expr.Specialization.NUMBER : Expr.Specialization.GENERIC;
+        }
 
         switch (expr.operator.type) {
             case BANG:
@@ -180,12 +287,12 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
 
     private Object lookUpVariable(Token name, Expr expr) {
-        Integer[] locationValues = locals.get(expr);
-        if (locationValues != null) {
-            return environment.getAt(locationValues[0], locationValues[1]);
-        } else {
-            return globals.get(name);
-        }
+        if (expr.distance == -1) return globals.get(name);
+        if (expr.distance != 0) return upvalues[expr.index].value;
+
+        Object value = stack[base + expr.index];
+        if (value instanceof Cell) return ((Cell)value).value;
+        return value;
     }
 
     private void checkNumberOperand(Token operator, Object operand) {
@@ -199,20 +306,20 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         throw new RuntimeError(operator, "Operands must be number.");
     }
 
-    private boolean isTruthy(Object object) {
+    static boolean isTruthy(Object object) {
         if (object == null) return false;
         if (object instanceof Boolean) return (boolean)object;
         return true;
     }
 
-    private boolean isEqual(Object a, Object b) {
+    static boolean isEqual(Object a, Object b) {
         if (a == null && b == null) return true;
         if (a == null) return false;
 
         return a.equals(b);
     }
 
-    private String stringify(Object object) {
+    static String stringify(Object object) {
         if (object == null) return "nil";
         if (object instanceof Double) {
             String text = object.toString();
@@ -229,80 +336,92 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return evaluate(expr.expression);
     }
 
-    private Object evaluate(Expr expr) {
-        return expr.accept(this);
+    Object evaluate(Expr expr) {
+        if (hotSpots == null) return expr.accept(this);
+        Object value = expr.accept(this);
+        hotSpots.evaluated(expr, value);
+        return value;
     }
 
     @Override
-    public Void visitExpressionStmt(Stmt.Expression stmt) {
+    public Completion visitExpressionStmt(Stmt.Expression stmt) {
         evaluate(stmt.expression);
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitFunctionStmt(Stmt.Function stmt) {
-        LanguageFunction function = new LanguageFunction(stmt, environment, false);
-        environment.define(stmt.name.lexeme, function);
-        return null;
+    public Completion visitFunctionStmt(Stmt.Function stmt) {
+        // A captured local function gets its cell first so the function can capture itself.
+        if (stmt.slot != -1 && stmt.captured) stack[base + stmt.slot] = new Cell(null);
+        LanguageFunction function = new LanguageFunction(stmt, captureUpvalues(stmt), false);
+        if (stmt.slot != -1 && stmt.captured) ((Cell)stack[base + stmt.slot]).value = function;
+        else define(stmt, stmt.name, function);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitIfStmt(Stmt.If stmt) {
+    public Completion visitIfStmt(Stmt.If stmt) {
         if (isTruthy(evaluate(stmt.condition))) {
-            execute(stmt.thenBranch);
+            return execute(stmt.thenBranch);
         } else if (stmt.elseBranch != null) {
-            execute(stmt.elseBranch);
+            return execute(stmt.elseBranch);
         }
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitPrintStmt(Stmt.Print stmt) {
+    public Completion visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
-        System.out.println(stringify(value));
-        return null;
+        context.out.println(stringify(value));
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitReturnStmt(Stmt.Return stmt) {
+    public Completion visitReturnStmt(Stmt.Return stmt) {
         Object value = null;
         if (stmt.value != null) value = evaluate(stmt.value);
 
-        throw new Return(value);
+        returnValue = value;
+        return Completion.RETURN;
     }
 
     @Override
-    public Void visitVarStmt(Stmt.Var stmt) {
+    public Completion visitVarStmt(Stmt.Var stmt) {
         Object value = null;
         if (stmt.initializer != null) {
             value = evaluate(stmt.initializer);
         }
-        environment.define(stmt.name.lexeme, value);
-        return null;
+        define(stmt, stmt.name, value);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitWhileStmt(Stmt.While stmt) {
+    public Completion visitWhileStmt(Stmt.While stmt) {
         while (isTruthy(evaluate(stmt.condition))) {
-            if (isBreak) {isBreak = false; break;}
-            execute(stmt.body);
+            Completion completion = execute(stmt.body);
+            // A break only leaves the innermost loop; a return keeps unwinding to its call.
+            if (completion == Completion.BREAK) break;
+            if (completion == Completion.RETURN) return completion;
         }
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitBreakStmt(Stmt.Break stmt) {
-        return null;
+    public Completion visitBreakStmt(Stmt.Break stmt) {
+        return Completion.BREAK;
     }
 
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
         Object value = evaluate(expr.value);
-        Integer[] locationValues = locals.get(expr);
-        if (locationValues != null) {
-            environment.assignAt(locationValues[0], locationValues[1], expr.name, value);
-        } else {
+        if (expr.distance == -1) {
             globals.assign(expr.name, value);
+        } else if (expr.distance != 0) {
+            upvalues[expr.index].value = value;
+        } else if (stack[base + expr.index] instanceof Cell) {
+            ((Cell)stack[base + expr.index]).value = value;
+        } else {
+            stack[base + expr.index] = value;
         }
         return value;
     }
@@ -317,9 +436,154 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
+        switch (expr.specialization) {
+            case NUMBER:
+                if (isComparison(expr.operator.type)) return compareNumbers(expr);
+                try {
+                    return arithmetic(expr);
+                } catch (UnexpectedResult result) {
+                    return result.value;
+                }
+            case STRING:
+                return binaryStrings(expr);
+            case GENERIC:
+                return binaryGeneric(expr, evaluate(expr.left), evaluate(expr.right));
+        }
+
+        Object left = evaluate(expr.left);
+        Object right = evaluate(expr.right);
+        expr.specialization = specialize(expr.operator.type, left, right);
+        return binaryGeneric(expr, left, right);
+    }
+
+    private static Expr.Specialization specialize(TokenType operator, Object left, Object right) {
+        boolean arithmetic = operator == TokenType.MINUS || operator == TokenType.SLASH ||
+                operator == TokenType.STAR || operator == TokenType.PLUS;
+        if (left instanceof Double && right instanceof Double && (arithmetic || isComparison(operator))) {
+            return Expr.Specialization.NUMBER;
+        }
+        if (left instanceof String && right instanceof String &&
+                (operator == TokenType.PLUS || isComparison(operator))) {
+            return Expr.Specialization.STRING;
+        }
+        return Expr.Specialization.GENERIC;
+    }
+
+    private static boolean isComparison(TokenType operator) {
+        return operator == TokenType.GREATER || operator == TokenType.GREATER_EQUAL ||
+                operator == TokenType.LESS || operator == TokenType.LESS_EQUAL;
+    }
+
+    // Evaluates an expression that has so far produced numbers without boxing the intermediate results of
+    // number-specialized operands. Anything that is not a number comes back as an UnexpectedResult.
+    private double evaluateNumber(Expr expr) {
+        Object value;
+        if (hotSpots != null) {
+            // The unboxed paths below skip evaluate(), so every node goes through it while counting.
+            value = evaluate(expr);
+        } else if (expr instanceof Expr.Variable) {
+            value = lookUpVariable(((Expr.Variable)expr).name, expr);
+        } else if (expr instanceof Expr.Literal) {
+            value = ((Expr.Literal)expr).value;
+        } else if (expr instanceof Expr.Grouping) {
+            return evaluateNumber(((Expr.Grouping)expr).expression);
+        } else if (expr instanceof Expr.Binary && ((Expr.Binary)expr).specialization == Expr.Specialization.NUMBER
+                && !isComparison(((Expr.Binary)expr).operator.type)) {
+            return arithmetic((Expr.Binary)expr);
+        } else if (expr instanceof Expr.Unary && ((Expr.Unary)expr).specialization == Expr.Specialization.NUMBER) {
+            return negate((Expr.Unary)expr);
+        } else {
+            value = evaluate(expr);
+        }
+
+        if (value instanceof Double) return (double)value;
+        throw new UnexpectedResult(value);
+    }
+
+    private double arithmetic(Expr.Binary expr) {
+        double left;
+        double right;
+        try {
+            left = evaluateNumber(expr.left);
+        } catch (UnexpectedResult result) {
+            return despecialize(expr, result.value, evaluate(expr.right));
+        }
+        try {
+            right = evaluateNumber(expr.right);
+        } catch (UnexpectedResult result) {
+            return despecialize(expr, left, result.value);
+        }
+
+        switch (expr.operator.type) {
+            case MINUS: return left - right;
+            case SLASH:
+                if (right == 0) throw new RuntimeError(expr.operator, "Cannot divide by zero.");
+                return left / right;
+            case STAR: return left * right;
+            default: return left + right;
+        }
+    }
+
+    // Once an operand stops being a number the node goes generic for good, finishing this evaluation with the
+    // operands it already has.
+    private double despecialize(Expr.Binary expr, Object left, Object right) {
+        expr.specialization = Expr.Specialization.GENERIC;
+        Object value = binaryGeneric(expr, left, right);
+        if (value instanceof Double) return (double)value;
+        throw new UnexpectedResult(value);
+    }
+
+    private double negate(Expr.Unary expr) {
+        try {
+            return -evaluateNumber(expr.right);
+        } catch (UnexpectedResult result) {
+            expr.specialization = Expr.Specialization.GENERIC;
+            throw new RuntimeError(expr.operator, "Operand must be a number.");
+        }
+    }
+
+    private Object compareNumbers(Expr.Binary expr) {
+        double left;
+        double right;
+        try {
+            left = evaluateNumber(expr.left);
+        } catch (UnexpectedResult result) {
+            expr.specialization = Expr.Specialization.GENERIC;
+            return binaryGeneric(expr, result.value, evaluate(expr.right));
+        }
+        try {
+            right = evaluateNumber(expr.right);
+        } catch (UnexpectedResult result) {
+            expr.specialization = Expr.Specialization.GENERIC;
+            return binaryGeneric(expr, left, result.value);
+        }
+
+        switch (expr.operator.type) {
+            case GREATER: return left > right;
+            case GREATER_EQUAL: return left >= right;
+            case LESS: return left < right;
+            default: return left <= right;
+        }
+    }
+
+    private Object binaryStrings(Expr.Binary expr) {
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
+        if (!(left instanceof String) || !(right instanceof String)) {
+            expr.specialization = Expr.Specialization.GENERIC;
+            return binaryGeneric(expr, left, right);
+        }
+
+        switch (expr.operator.type) {
+            case PLUS: return (String)left + (String)right;
+            case GREATER: return ((String)left).compareTo((String)right) > 0;
+            case GREATER_EQUAL: return ((String)left).compareTo((String)right) >= 0;
+            case LESS: return ((String)left).compareTo((String)right) < 0;
+            default: return ((String)left).compareTo((String)right) <= 0;
+        }
+    }
 
+    private Object binaryGeneric(Expr.Binary expr, Object left, Object right) {
         switch (expr.operator.type) {
             case COMMA:
                 // Left and right are already evaluated at this point, so we just need to return right.
@@ -426,29 +690,131 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitCallExpr(Expr.Call expr) {
-        Object callee = evaluate(expr.callee);
-        List<Object> arguments = new ArrayList<>();
-        for (Expr argument : expr.arguments) {
-            arguments.add(evaluate(argument));
+        // Calls that aren't in tail position each take Java stack, so deep enough recursion runs out of it. That
+        // is reported like any other runtime error, as the VM does when it runs out of frames.
+        try {
+            return evaluateCall(expr);
+        } catch (StackOverflowError error) {
+            throw new RuntimeError(expr.paren, "Stack overflow.");
         }
+    }
+
+    private Object evaluateCall(Expr.Call expr) {
+        // obj.method() and super.method() hand the receiver straight to the method rather than allocating a
+        // bound method that would be thrown away as soon as the call returns.
+        if (expr.callee instanceof Expr.Get) {
+            Expr.Get get = (Expr.Get)expr.callee;
+            Object object = evaluate(get.object);
+            if (object instanceof LanguageInstance) {
+                LanguageFunction method = methodAt(get, (LanguageInstance)object);
+                if (method != null) return invoke(expr, method, (LanguageInstance)object);
+            }
+            return call(expr, getProperty(get, object));
+        }
+        if (expr.callee instanceof Expr.Super) {
+            Expr.Super callee = (Expr.Super)expr.callee;
+            LanguageInstance object = (LanguageInstance)lookUpVariable(callee.receiver.keyword, callee.receiver);
+            return invoke(expr, superMethod(callee), object);
+        }
+        return call(expr, evaluate(expr.callee));
+    }
+
+    private Object call(Expr.Call expr, Object callee) {
+        if (callee instanceof NativeFunction) return callNative(expr, (NativeFunction)callee);
+        Object[] arguments = evaluateArguments(expr);
 
         if (!(callee instanceof LanguageCallable)) {
             throw new RuntimeError(expr.paren, "Can only call functions and classes.");
         }
 
         LanguageCallable function = (LanguageCallable)callee;
-        if (arguments.size() != function.arity()) {
-            throw new RuntimeError(expr.paren, "Expected " + function.arity() +
-                    " arguments but got " + arguments.size() + ".");
+        checkArity(expr, function.arity(), arguments.length);
+        if (expr.tail && function instanceof LanguageFunction) {
+            return ((LanguageFunction)function).tailCall(arguments);
         }
         return function.call(this, arguments);
     }
 
+    // Natives of up to two parameters are handed their arguments as they are, so calling one allocates nothing.
+    private Object callNative(Expr.Call expr, NativeFunction function) {
+        int count = expr.arguments.size();
+        Object first = count > 0 && count <= 2 ? evaluate(expr.arguments.get(0)) : null;
+        Object second = count == 2 ? evaluate(expr.arguments.get(1)) : null;
+        Object[] arguments = count > 2 ? evaluateArguments(expr) : null;
+        checkArity(expr, function.arity(), count);
+
+        if (profiler != null) profiler.enter(profiler.site(function));
+        try {
+            switch (count) {
+                case 0: return function.call0();
+                case 1: return function.call1(first);
+                case 2: return function.call2(first, second);
+                default: return function.callN(arguments);
+            }
+        } catch (LoxException error) {
+            throw new RuntimeError(expr.paren, error.getMessage());
+        } finally {
+            if (profiler != null) profiler.exit();
+        }
+    }
+
+    private Object invoke(Expr.Call expr, LanguageFunction method, LanguageInstance receiver) {
+        Object[] arguments = evaluateArguments(expr);
+        checkArity(expr, method.arity(), arguments.length);
+        if (expr.tail) return new TailCall(method, receiver, arguments);
+        return method.invoke(this, receiver, arguments);
+    }
+
+    private Object[] evaluateArguments(Expr.Call expr) {
+        Object[] arguments = new Object[expr.arguments.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = evaluate(expr.arguments.get(i));
+        }
+        return arguments;
+    }
+
+    private void checkArity(Expr.Call expr, int arity, int count) {
+        if (count != arity) {
+            throw new RuntimeError(expr.paren, "Expected " + arity + " arguments but got " + count + ".");
+        }
+    }
+
+    // The method a Get names on this instance, or null if the name is a field or isn't defined at all.
+    private LanguageFunction methodAt(Expr.Get expr, LanguageInstance instance) {
+        PropertyCache.Entry entry = expr.cache.find(instance.shape);
+        if (entry != null) return entry.method;
+        if (instance.shape.slotOf(expr.name.symbol) != -1) return null;
+
+        LanguageFunction method = instance.klass.findMethod(expr.name.symbol);
+        if (method != null) expr.cache.add(instance.shape, instance.shape, -1, method);
+        return method;
+    }
+
     @Override
     public Object visitGetExpr(Expr.Get expr) {
-        Object object = evaluate(expr.object);
+        return getProperty(expr, evaluate(expr.object));
+    }
+
+    private Object getProperty(Expr.Get expr, Object object) {
         if (object instanceof LanguageInstance) {
-            return ((LanguageInstance) object).get(expr.name);
+            LanguageInstance instance = (LanguageInstance)object;
+            PropertyCache.Entry entry = expr.cache.find(instance.shape);
+            if (entry != null) {
+                if (entry.method == null) return instance.fields[entry.slot];
+                return entry.method.bind(instance);
+            }
+
+            int slot = instance.shape.slotOf(expr.name.symbol);
+            if (slot != -1) {
+                expr.cache.add(instance.shape, instance.shape, slot, null);
+                return instance.fields[slot];
+            }
+            LanguageFunction method = instance.klass.findMethod(expr.name.symbol);
+            if (method != null) {
+                expr.cache.add(instance.shape, instance.shape, -1, method);
+                return method.bind(instance);
+            }
+            return instance.get(expr.name);
         }
 
         throw new RuntimeError(expr.name, "Only instances have properties.");
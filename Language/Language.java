@@ -4,37 +4,141 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 
 public class Language {
-    private static final Interpreter interpreter = new Interpreter();
-    static boolean hadError = false;
-    static boolean hadRuntimeError = false;
+    // The command line runs one script, or one prompt, so it has only the one context.
+    private final Context context = new Context();
+    private final Interpreter interpreter = new Interpreter(context, null, NativeRegistry.builtins());
+    private final VM vm = new VM(context, NativeRegistry.builtins());
+    // Set by --vm to compile to bytecode and run on the VM instead of walking the tree.
+    private boolean useVM = false;
+    // Set by --no-optimize to run the program exactly as it was written, and by --report-optimizations to print
+    // what the Optimizer changed.
+    private boolean optimize = true;
+    private boolean reportOptimizations = false;
+    // Scripts are read as UTF-8 whatever the platform default is, unless --encoding=NAME says otherwise.
+    private Charset encoding = StandardCharsets.UTF_8;
+    // Set by --no-cache to parse every script afresh rather than load the tree an earlier run saved. The trees
+    // are kept in --cache-dir=DIR, or in the user's cache directory.
+    private boolean useCache = true;
+    private Path cacheDirectory = null;
+    // Set by --profile to sample the running script and report where its time went. The collapsed stacks go to
+    // the file given as --profile=FILE, or to the script's name with .collapsed added.
+    private Profiler profiler = null;
+    private String collapsedStacks = null;
+    // Set by --hotspots to count how often each statement and expression runs, and by --hotspots=types to note
+    // the types of value each expression produced as well.
+    private HotSpots hotSpots = null;
+    // Set by --jfr to emit Flight Recorder events for each phase, call, instantiation and runtime error, which a
+    // running recording then picks up.
+    private boolean recordEvents = false;
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
+        new Language().run(args);
+    }
+
+    private void run(String[] args) throws IOException {
+        String script = null;
+        for (String arg : args) {
+            if (arg.equals("--vm")) {
+                useVM = true;
+            } else if (arg.equals("--no-optimize")) {
+                optimize = false;
+            } else if (arg.equals("--report-optimizations")) {
+                reportOptimizations = true;
+            } else if (arg.equals("--profile") || arg.startsWith("--profile=")) {
+                profiler = new Profiler();
+                if (arg.startsWith("--profile=")) collapsedStacks = arg.substring("--profile=".length());
+            } else if (arg.equals("--hotspots") || arg.equals("--hotspots=types")) {
+                hotSpots = new HotSpots(arg.equals("--hotspots=types"));
+            } else if (arg.equals("--jfr")) {
+                recordEvents = true;
+            } else if (arg.equals("--no-cache")) {
+                useCache = false;
+            } else if (arg.startsWith("--cache-dir=")) {
+                cacheDirectory = Paths.get(arg.substring("--cache-dir=".length()));
+            } else if (arg.startsWith("--encoding=")) {
+                encoding = charset(arg.substring("--encoding=".length()));
+            } else if (script == null && !arg.startsWith("--")) {
+                script = arg;
+            } else {
+                System.out.println("Usage: jlox [--vm] [--no-optimize] [--report-optimizations] [--no-cache] " +
+                        "[--cache-dir=DIR] [--profile[=FILE]] [--hotspots[=types]] [--jfr] [--encoding=NAME] [script]");
+                System.exit(64);
+            }
+        }
+
+        if (profiler != null && useVM) {
+            System.out.println("--profile only works with the tree-walking interpreter.");
             System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        }
+        if (hotSpots != null && useVM) {
+            System.out.println("--hotspots only works with the tree-walking interpreter.");
+            System.exit(64);
+        }
+        interpreter.hotSpots = hotSpots;
+        context.recordEvents = recordEvents;
+        if (profiler != null) {
+            if (collapsedStacks == null) collapsedStacks = (script == null ? "jlox" : script) + ".collapsed";
+            interpreter.profiler = profiler;
+        }
+
+        if (script != null) {
+            runFile(script);
         } else {
             runPrompt();
+            finishProfile();
+        }
+    }
+
+    private void finishProfile() throws IOException {
+        if (hotSpots != null) hotSpots.report(System.err);
+        if (profiler == null) return;
+        profiler.stop();
+        profiler.report(System.err);
+        profiler.writeCollapsedStacks(Paths.get(collapsedStacks));
+        System.err.println("Collapsed stacks written to " + collapsedStacks + ".");
+    }
+
+    private Charset charset(String name) {
+        try {
+            return Charset.forName(name);
+        } catch (IllegalArgumentException error) {
+            System.out.println("Unknown encoding '" + name + "'.");
+            System.exit(64);
+            return null;
         }
     }
 
-    private static void runFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
+    private void runFile(String path) throws IOException {
+        // The file is mapped rather than read, and the Scanner decodes it as it goes.
+        Path file = Paths.get(path);
+        MappedSource source = new MappedSource(file, encoding);
+        AstCache cache = null;
+        List<Stmt> statements = null;
+        if (useCache) {
+            Events.Phase phase = phase();
+            cache = new AstCache(cacheDirectory != null ? cacheDirectory : AstCache.defaultDirectory(),
+                    source.contentHash());
+            statements = cache.load();
+            endPhase(phase, "load cached tree");
+            if (statements != null) interpreter.reserveScriptSlots(cache.scriptSlots);
+        }
+        if (statements == null) statements = analyze(source, cache);
+        if (statements != null) execute(statements);
+        finishProfile();
 
         //Indicate an error in the exit code.
-        if (hadError) System.exit(65);
-        if (hadRuntimeError) System.exit(70);
+        if (context.hadError) System.exit(65);
+        if (context.hadRuntimeError) System.exit(70);
     }
 
-    private static void runPrompt() throws IOException {
-        InputStreamReader input = new InputStreamReader(System.in);
+    private void runPrompt() throws IOException {
+        InputStreamReader input = new InputStreamReader(System.in, encoding);
         BufferedReader reader = new BufferedReader(input);
 
         for (;;) {
@@ -42,55 +146,77 @@ public class Language {
             String line = reader.readLine();
             if (line == null) break;
             run(line);
-            hadError = false;
+            context.reset();
         }
     }
 
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
-        Parser parser = new Parser(tokens);
+    private void run(CharSequence source) {
+        List<Stmt> statements = analyze(source, null);
+        if (statements != null) execute(statements);
+    }
+
+    // Scans, parses and resolves the source, saving the tree to the cache if one is given. Returns null if there
+    // was an error.
+    private List<Stmt> analyze(CharSequence source, AstCache cache) {
+        // The Parser pulls tokens from the Scanner as it goes, so the two are timed as one phase.
+        Events.Phase phase = phase();
+        Parser parser = new Parser(new Scanner(source, context), context);
         List<Stmt> statements = parser.parse();
+        endPhase(phase, "scan and parse");
 
         // Stop if there was a syntax error.
-        if (hadError) return;
+        if (context.hadError) return null;
+        phase = phase();
         Resolver resolver = new Resolver(interpreter);
         resolver.resolve(statements);
+        endPhase(phase, "resolve");
 
         // Stop if there was a resolution error.
-        if (hadError) return;
-        interpreter.interpret(statements);
-    }
-
-    static void error(int line, int column, String where, String message) {
-        report(line, column, where, message);
-    }
-
-    private static void report(int line, int column, String where, String message) {
-        System.err.println("Error: " + message + "\n" + "Line " + line + "| " + where);
-        // The preceding text "Line x| " is 8 spaces, so count must start from there rather than the beginning.
-        for (int i = 0; i < column + 8; i++) {
-            System.err.print(" ");
+        if (context.hadError) return null;
+        // A loaded tree says nothing, so a script whose front end printed anything is parsed every time instead.
+        if (cache != null && !context.hadWarning && !parser.evaluatedWhileParsing) {
+            cache.store(statements, resolver.scriptSlots());
         }
-        System.err.print("^" + "\n");
-        hadError = true;
+        return statements;
     }
 
-    static void syntaxReport(int line, String where, String message) {
-        System.err.println("Error: " + message + "\n" + "Line " + line + "| " + where);
-        hadError = true;
-    }
+    private void execute(List<Stmt> statements) {
+        if (optimize) {
+            Events.Phase phase = phase();
+            Optimizer optimizer = new Optimizer();
+            statements = optimizer.optimize(statements);
+            endPhase(phase, "optimize");
+            if (reportOptimizations) {
+                for (String line : optimizer.report()) {
+                    System.err.println(line);
+                }
+            }
+        }
 
-    static void error(Token token, String message) {
-        if (token.type == TokenType.EOF) {
-            syntaxReport(token.line, " at end", message);
+        if (useVM) {
+            Events.Phase phase = phase();
+            VM.Function function = new Compiler(context).compile(statements);
+            endPhase(phase, "compile");
+            if (context.hadError) return;
+            phase = phase();
+            vm.interpret(function);
+            endPhase(phase, "execute");
         } else {
-            syntaxReport(token.line, " at '" + token.lexeme + "'", message);
+            // Sampling starts here so that scanning, parsing and resolving aren't counted as the script's time.
+            if (profiler != null) profiler.start();
+            if (hotSpots != null) hotSpots.watch(statements);
+            Events.Phase phase = phase();
+            interpreter.interpret(statements);
+            endPhase(phase, "execute");
         }
     }
 
-    static void runtimeError(RuntimeError error) {
-        System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
-        hadRuntimeError = true;
+    // Null unless --jfr was given, so that the phases cost nothing to time otherwise.
+    private Events.Phase phase() {
+        return recordEvents ? Events.phase() : null;
+    }
+
+    private void endPhase(Events.Phase phase, String name) {
+        if (phase != null) phase.finish(name);
     }
 }
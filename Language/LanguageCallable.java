@@ -1,8 +1,7 @@
 package com.craftinginterpreters.language;
 
-import java.util.List;
-
 interface LanguageCallable {
     int arity();
-    Object call(Interpreter interpreter, List<Object> arguments);
+    // The array is made for this call alone, so the callee is free to keep it.
+    Object call(Interpreter interpreter, Object[] arguments);
 }
@@ -1,29 +1,31 @@
 package com.craftinginterpreters.language;
 
-import java.util.List;
+import java.util.HashMap;
 import java.util.Map;
 
 public class LanguageClass implements LanguageCallable {
     final String name;
     final LanguageClass superclass;
-    private final Map<String, LanguageFunction> methods;
-
-    LanguageClass(String name, LanguageClass superclass, Map<String, LanguageFunction> methods) {
+    // Flattened when the class is created: inherited methods are copied down and the class's own methods
+    // override them, so a lookup never walks the superclass chain.
+    private final Map<Symbol, LanguageFunction> methods;
+    private final LanguageFunction initializer;
+    // Shape every new instance starts from, and how many field slots instances have needed so far.
+    final Shape instanceShape = new Shape();
+    int fieldCount = 0;
+
+    LanguageClass(String name, LanguageClass superclass, Map<Symbol, LanguageFunction> methods) {
         this.superclass = superclass;
         this.name = name;
-        this.methods = methods;
+        Map<Symbol, LanguageFunction> table = new HashMap<>();
+        if (superclass != null) table.putAll(superclass.methods);
+        table.putAll(methods);
+        this.methods = table;
+        this.initializer = table.get(Symbol.INIT);
     }
 
-    LanguageFunction findMethod(String name) {
-        if (methods.containsKey(name)) {
-            return methods.get(name);
-        }
-
-        if (superclass != null) {
-            return superclass.findMethod(name);
-        }
-
-        return null;
+    LanguageFunction findMethod(Symbol name) {
+        return methods.get(name);
     }
 
     @Override
@@ -32,18 +34,24 @@ public class LanguageClass implements LanguageCallable {
     }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments) {
-        LanguageInstance instance = new LanguageInstance(this);
-        LanguageFunction initializer = findMethod("init");
-        if (initializer != null) {
-            initializer.bind(instance).call(interpreter, arguments);
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        Profiler profiler = interpreter.profiler;
+        if (profiler != null) profiler.enter(profiler.site(this));
+        Events.Instantiation event = interpreter.context.recordEvents ? Events.instantiation() : null;
+        try {
+            LanguageInstance instance = new LanguageInstance(this);
+            if (initializer != null) {
+                initializer.invoke(interpreter, instance, arguments);
+            }
+            return instance;
+        } finally {
+            if (event != null) event.finish(this);
+            if (profiler != null) profiler.exit();
         }
-        return instance;
     }
 
     @Override
     public int arity() {
-        LanguageFunction initializer = findMethod("init");
         if (initializer == null) return 0;
         return initializer.arity();
     }
@@ -1,22 +1,31 @@
 package com.craftinginterpreters.language;
 
-import java.util.List;
-
 class LanguageFunction implements LanguageCallable {
     private final Stmt.Function declaration;
-    private final Environment closure;
+    // Only the variables this function actually refers to from enclosing functions, not their whole frames.
+    private final Cell[] upvalues;
     private final boolean isInitializer;
+    // Set on methods bound to an instance, which is passed in slot zero of the frame.
+    private final LanguageInstance receiver;
+
+    LanguageFunction(Stmt.Function declaration, Cell[] upvalues, boolean isInitializer) {
+        this(declaration, upvalues, isInitializer, null);
+    }
 
-    LanguageFunction(Stmt.Function declaration, Environment closure, boolean isInitializer) {
+    private LanguageFunction(Stmt.Function declaration, Cell[] upvalues, boolean isInitializer,
+                             LanguageInstance receiver) {
         this.isInitializer = isInitializer;
-        this.closure = closure;
+        this.upvalues = upvalues;
         this.declaration = declaration;
+        this.receiver = receiver;
     }
 
     LanguageFunction bind(LanguageInstance instance) {
-        Environment environment = new Environment(closure);
-        environment.define("this", instance);
-        return new LanguageFunction(declaration, environment, isInitializer);
+        return new LanguageFunction(declaration, upvalues, isInitializer, instance);
+    }
+
+    TailCall tailCall(Object[] arguments) {
+        return new TailCall(this, receiver, arguments);
     }
 
     @Override
@@ -30,22 +39,24 @@ class LanguageFunction implements LanguageCallable {
     }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments) {
-        Environment environment = new Environment(closure);
-        for (int i = 0; i < declaration.params.size(); i++) {
-            environment.define(declaration.params.get(i).lexeme, arguments.get(i));
-        }
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        return invoke(interpreter, receiver, arguments);
+    }
 
-        try {
-            interpreter.executeBlock(declaration.body, environment);
-        } catch (Return returnValue) {
-            Token dummyToken = new Token(TokenType.THIS, "this", "", 0);
-            if (isInitializer) return closure.get(dummyToken);
-            return returnValue.value;
+    // Runs the function with the given receiver in slot zero, so a method can be called on an instance without
+    // binding it first.
+    Object invoke(Interpreter interpreter, LanguageInstance instance, Object[] arguments) {
+        Object value = interpreter.executeFunction(declaration, upvalues, instance, arguments);
+        // Calls in tail position come back unmade and are run here, once the frame of the function that returned
+        // them has been popped, so a chain of them never takes more Java stack than the first call.
+        while (value instanceof TailCall) {
+            TailCall call = (TailCall)value;
+            LanguageFunction function = call.function;
+            value = interpreter.executeFunction(function.declaration, function.upvalues, call.receiver, call.arguments);
+            if (function.isInitializer) value = call.receiver;
         }
 
-        Token dummyToken = new Token(TokenType.THIS, "this", "", 0);
-        if (isInitializer) return closure.get(dummyToken);
-        return null;
+        if (isInitializer) return instance;
+        return value;
     }
 }
@@ -1,29 +1,47 @@
 package com.craftinginterpreters.language;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public class LanguageInstance {
-    private LanguageClass klass;
-    private final Map<String, Object> fields = new HashMap<>();
+    final LanguageClass klass;
+    // Field values, laid out as described by shape.
+    Shape shape;
+    Object[] fields;
 
     LanguageInstance(LanguageClass klass) {
         this.klass = klass;
+        this.shape = klass.instanceShape;
+        this.fields = new Object[klass.fieldCount];
     }
 
     Object get(Token name) {
-        if (fields.containsKey(name.lexeme)) {
-            return fields.get(name.lexeme);
+        int slot = shape.slotOf(name.symbol);
+        if (slot != -1) {
+            return fields[slot];
         }
 
-        LanguageFunction method = klass.findMethod(name.lexeme);
+        LanguageFunction method = klass.findMethod(name.symbol);
         if (method != null) return method.bind(this);
 
         throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
     }
 
     void set(Token name, Object value) {
-        fields.put(name.lexeme, value);
+        int slot = shape.slotOf(name.symbol);
+        if (slot == -1) {
+            slot = shape.size;
+            reshape(shape.withField(name.symbol));
+        }
+        fields[slot] = value;
+    }
+
+    void reshape(Shape target) {
+        if (target.size > fields.length) {
+            fields = Arrays.copyOf(fields, Math.max(target.size, fields.length * 2));
+        }
+        shape = target;
+        // Later instances of the class start out with room for every field this one has needed.
+        if (target.size > klass.fieldCount) klass.fieldCount = target.size;
     }
 
     @Override
@@ -0,0 +1,63 @@
+package com.craftinginterpreters.language;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// The way in for a Java program that embeds the interpreter. compile() scans, parses, resolves and optimizes a
+// script once, and the PreparedScript it returns can then be run any number of times, from any number of threads
+// at once, each run with globals of its own.
+public class LoxEngine {
+    private final PrintStream out;
+    private final PrintStream err;
+    private final NativeRegistry natives;
+
+    public LoxEngine() {
+        this(System.out, System.err);
+    }
+
+    // What scripts print goes to out, and warnings about them to err.
+    public LoxEngine(PrintStream out, PrintStream err) {
+        this(out, err, NativeRegistry.builtins());
+    }
+
+    // Scripts can call the Java functions in natives as well as the built-in ones.
+    public LoxEngine(PrintStream out, PrintStream err, NativeRegistry natives) {
+        this.out = out;
+        this.err = err;
+        this.natives = natives;
+    }
+
+    // Throws a LoxException listing every error found if the script doesn't compile.
+    public PreparedScript compile(String source) {
+        return compile(source, err);
+    }
+
+    // For javax.script, which caches what it compiles across contexts, so warnings go to the context compiling the
+    // script rather than to this engine.
+    PreparedScript compile(String source, PrintStream warnings) {
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        Context context = new Context(out, new PrintStream(errors, true, StandardCharsets.UTF_8));
+        Parser parser = new Parser(new Scanner(source, context), context);
+        parser.evaluateWhileParsing = false;
+        List<Stmt> statements = parser.parse();
+        Resolver resolver = new Resolver(new Interpreter(context));
+        if (!context.hadError) resolver.resolve(statements);
+
+        String report = errors.toString(StandardCharsets.UTF_8);
+        if (context.hadError) throw new LoxException(report.trim(), 0);
+        if (context.hadWarning) warnings.print(report);
+
+        // The last expression is the script's result, so it is kept from the Optimizer, which would drop a
+        // constant one as having no effect.
+        Expr result = null;
+        if (!statements.isEmpty() && statements.get(statements.size() - 1) instanceof Stmt.Expression) {
+            result = ((Stmt.Expression)statements.remove(statements.size() - 1)).expression;
+        }
+        Optimizer optimizer = new Optimizer();
+        statements = optimizer.optimize(statements);
+        if (result != null) result = optimizer.optimize(result);
+        return new PreparedScript(statements, result, resolver.scriptSlots(), out, err, natives);
+    }
+}
@@ -0,0 +1,21 @@
+package com.craftinginterpreters.language;
+
+// Thrown by the embedding API for a script that doesn't compile, or that fails while it runs.
+public class LoxException extends RuntimeException {
+    private final int line;
+
+    // For a NativeFunction to throw, which reports a runtime error at the line of the call.
+    public LoxException(String message) {
+        this(message, 0);
+    }
+
+    LoxException(String message, int line) {
+        super(message);
+        this.line = line;
+    }
+
+    // The line a runtime error happened on. Compile errors give 0, since the message has the line of each error.
+    public int getLine() {
+        return line;
+    }
+}
@@ -0,0 +1,252 @@
+package com.craftinginterpreters.language;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+// Lox for javax.script. A script's globals are its context's engine scope bindings, read and written in place, and
+// evaluating a script returns the value of its last statement if that is an expression. Sources are compiled
+// through the factory's cache, so evaluating the same source again only runs it.
+public class LoxScriptEngine extends AbstractScriptEngine implements Compilable, Invocable {
+    private final LoxScriptEngineFactory factory;
+
+    LoxScriptEngine(LoxScriptEngineFactory factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public Object eval(String script, ScriptContext context) throws ScriptException {
+        return run(prepare(script, context), context);
+    }
+
+    @Override
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return eval(read(reader), context);
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return new SimpleBindings();
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return factory;
+    }
+
+    @Override
+    public CompiledScript compile(String script) throws ScriptException {
+        PreparedScript prepared = prepare(script, context);
+        return new CompiledScript() {
+            @Override
+            public Object eval(ScriptContext context) throws ScriptException {
+                return run(prepared, context);
+            }
+
+            @Override
+            public ScriptEngine getEngine() {
+                return LoxScriptEngine.this;
+            }
+        };
+    }
+
+    @Override
+    public CompiledScript compile(Reader script) throws ScriptException {
+        return compile(read(script));
+    }
+
+    @Override
+    public Object invokeFunction(String name, Object... arguments) throws ScriptException, NoSuchMethodException {
+        Object function = context.getBindings(ScriptContext.ENGINE_SCOPE).get(name);
+        if (!(function instanceof LanguageCallable)) throw new NoSuchMethodException(name);
+        return call((LanguageCallable)function, arguments);
+    }
+
+    @Override
+    public Object invokeMethod(Object thiz, String name, Object... arguments)
+            throws ScriptException, NoSuchMethodException {
+        LanguageInstance instance = instance(thiz);
+        LanguageFunction method = instance.klass.findMethod(Symbol.of(name));
+        if (method == null) throw new NoSuchMethodException(name);
+        return call(method.bind(instance), arguments);
+    }
+
+    @Override
+    public <T> T getInterface(Class<T> type) {
+        return implement(null, type);
+    }
+
+    @Override
+    public <T> T getInterface(Object thiz, Class<T> type) {
+        return implement(instance(thiz), type);
+    }
+
+    private PreparedScript prepare(String source, ScriptContext context) throws ScriptException {
+        try {
+            return factory.scripts.get(source, s -> factory.compiler.compile(s, err(context)));
+        } catch (LoxException error) {
+            throw scriptException(error, context);
+        }
+    }
+
+    private Object run(PreparedScript script, ScriptContext context) throws ScriptException {
+        try {
+            return script.run(context.getBindings(ScriptContext.ENGINE_SCOPE), out(context), err(context));
+        } catch (LoxException error) {
+            throw scriptException(error, context);
+        }
+    }
+
+    // Calls a function or bound method the way a call expression would, in an interpreter of its own that has
+    // the engine scope bindings as its globals.
+    private Object call(LanguageCallable callable, Object[] arguments) throws ScriptException {
+        Object[] values = new Object[arguments == null ? 0 : arguments.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Environment.fromJava(arguments[i]);
+        }
+        if (values.length != callable.arity()) {
+            throw new ScriptException("Expected " + callable.arity() + " arguments but got " + values.length + ".");
+        }
+
+        Interpreter interpreter = new Interpreter(new Context(out(context), err(context)),
+                context.getBindings(ScriptContext.ENGINE_SCOPE), factory.natives);
+        try {
+            return callable.call(interpreter, values);
+        } catch (RuntimeError error) {
+            throw scriptException(new LoxException(error.getMessage(), error.token.line), context);
+        } catch (LoxException error) {
+            throw scriptException(error, context);
+        }
+    }
+
+    private static LanguageInstance instance(Object thiz) {
+        if (!(thiz instanceof LanguageInstance)) throw new IllegalArgumentException("Not a Lox instance: " + thiz);
+        return (LanguageInstance)thiz;
+    }
+
+    // Each of the interface's methods calls the function, or the method on instance, of the same name. Returns null
+    // if any of them is missing.
+    private <T> T implement(LanguageInstance instance, Class<T> type) {
+        if (type == null || !type.isInterface()) throw new IllegalArgumentException("Not an interface: " + type);
+        for (Method method : type.getMethods()) {
+            if (!Modifier.isAbstract(method.getModifiers())) continue;
+            boolean found = instance == null
+                    ? context.getBindings(ScriptContext.ENGINE_SCOPE).get(method.getName()) instanceof LanguageCallable
+                    : instance.klass.findMethod(Symbol.of(method.getName())) != null;
+            if (!found) return null;
+        }
+
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (self, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals": return self == args[0];
+                    case "hashCode": return System.identityHashCode(self);
+                    default: return "Lox " + type.getName();
+                }
+            }
+            Object value = instance == null
+                    ? invokeFunction(method.getName(), args)
+                    : invokeMethod(instance, method.getName(), args);
+            return toJava(value, method.getReturnType());
+        });
+        return type.cast(proxy);
+    }
+
+    // Lox numbers are all doubles, so one returned where Java wants another kind of number is converted.
+    private static Object toJava(Object value, Class<?> type) {
+        if (type == void.class) return null;
+        if (!(value instanceof Double)) return value;
+        double number = (Double)value;
+        if (type == int.class || type == Integer.class) return (int)number;
+        if (type == long.class || type == Long.class) return (long)number;
+        if (type == float.class || type == Float.class) return (float)number;
+        if (type == short.class || type == Short.class) return (short)number;
+        if (type == byte.class || type == Byte.class) return (byte)number;
+        return value;
+    }
+
+    private static ScriptException scriptException(LoxException error, ScriptContext context) {
+        Object file = context.getAttribute(ScriptEngine.FILENAME);
+        ScriptException exception = new ScriptException(error.getMessage(), file == null ? null : file.toString(),
+                error.getLine() == 0 ? -1 : error.getLine());
+        exception.initCause(error);
+        return exception;
+    }
+
+    private static String read(Reader reader) throws ScriptException {
+        StringWriter source = new StringWriter();
+        try {
+            reader.transferTo(source);
+        } catch (IOException error) {
+            throw new ScriptException(error);
+        }
+        return source.toString();
+    }
+
+    private static PrintStream out(ScriptContext context) {
+        return new PrintStream(new WriterStream(context.getWriter()), true, StandardCharsets.UTF_8);
+    }
+
+    private static PrintStream err(ScriptContext context) {
+        return new PrintStream(new WriterStream(context.getErrorWriter()), true, StandardCharsets.UTF_8);
+    }
+
+    // The interpreter prints to PrintStreams, and a ScriptContext gives Writers. Whatever the PrintStream writes
+    // reaches here as UTF-8 and is decoded back into characters, keeping the bytes of a character split across
+    // two writes until the rest of it arrives.
+    static class WriterStream extends OutputStream {
+        private final Writer writer;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private ByteBuffer pending = ByteBuffer.allocate(0);
+
+        WriterStream(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte)b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            ByteBuffer input = ByteBuffer.wrap(bytes, offset, length);
+            if (pending.hasRemaining()) {
+                input = ByteBuffer.allocate(pending.remaining() + length).put(pending).put(input).flip();
+            }
+            CharBuffer chars = CharBuffer.allocate(input.remaining());
+            decoder.decode(input, chars, false);
+            writer.write(chars.array(), 0, chars.position());
+            writer.flush();
+            pending = ByteBuffer.allocate(input.remaining()).put(input).flip();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+    }
+}
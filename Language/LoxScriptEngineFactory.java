@@ -0,0 +1,107 @@
+package com.craftinginterpreters.language;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+
+// Makes LoxScriptEngines for javax.script, which finds this class through META-INF/services. The engines of one
+// factory share its cache of compiled scripts.
+public class LoxScriptEngineFactory implements ScriptEngineFactory {
+    private static final int DEFAULT_CACHE_SIZE = 256;
+
+    final ScriptCache scripts;
+    final NativeRegistry natives;
+    // Compiles the scripts in the cache. Its own streams are never written to, since every run is given the
+    // writers of the context it runs in, so a cached script holds on to no context's writers.
+    final LoxEngine compiler;
+
+    public LoxScriptEngineFactory() {
+        this(DEFAULT_CACHE_SIZE, NativeRegistry.builtins());
+    }
+
+    // Keeps at most cacheSize compiled scripts, dropping the least recently used, and lets scripts call the Java
+    // functions in natives.
+    public LoxScriptEngineFactory(int cacheSize, NativeRegistry natives) {
+        this.scripts = new ScriptCache(cacheSize);
+        this.natives = natives;
+        PrintStream nowhere = new PrintStream(OutputStream.nullOutputStream());
+        this.compiler = new LoxEngine(nowhere, nowhere, natives);
+    }
+
+    @Override
+    public String getEngineName() {
+        return "jlox";
+    }
+
+    @Override
+    public String getEngineVersion() {
+        return "1.0";
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return List.of("lox");
+    }
+
+    @Override
+    public List<String> getMimeTypes() {
+        return List.of("application/x-lox");
+    }
+
+    @Override
+    public List<String> getNames() {
+        return List.of("lox", "Lox", "jlox");
+    }
+
+    @Override
+    public String getLanguageName() {
+        return "Lox";
+    }
+
+    @Override
+    public String getLanguageVersion() {
+        return "1.0";
+    }
+
+    @Override
+    public Object getParameter(String key) {
+        switch (key) {
+            case ScriptEngine.ENGINE: return getEngineName();
+            case ScriptEngine.ENGINE_VERSION: return getEngineVersion();
+            case ScriptEngine.NAME: return getNames().get(0);
+            case ScriptEngine.LANGUAGE: return getLanguageName();
+            case ScriptEngine.LANGUAGE_VERSION: return getLanguageVersion();
+            // Null, as for Nashorn: classes and instances shared through bindings change their shapes and fields
+            // without any locking, so evaluations on several threads at once aren't safe.
+            case "THREADING": return null;
+            default: return null;
+        }
+    }
+
+    @Override
+    public String getMethodCallSyntax(String object, String method, String... arguments) {
+        return object + "." + method + "(" + String.join(", ", arguments) + ")";
+    }
+
+    // Lox strings have no escapes, so text with a double quote in it can't be printed this way.
+    @Override
+    public String getOutputStatement(String toDisplay) {
+        return "print \"" + toDisplay + "\";";
+    }
+
+    @Override
+    public String getProgram(String... statements) {
+        StringBuilder program = new StringBuilder();
+        for (String statement : statements) {
+            program.append(statement).append(";\n");
+        }
+        return program.toString();
+    }
+
+    @Override
+    public ScriptEngine getScriptEngine() {
+        return new LoxScriptEngine(this);
+    }
+}
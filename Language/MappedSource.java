@@ -0,0 +1,140 @@
+package com.craftinginterpreters.language;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+// A script file mapped into memory and decoded a chunk at a time as the Scanner reaches it. Only a window of
+// decoded characters is kept on the heap: everything before the point the Scanner has said it is done with is
+// dropped whenever more of the file is decoded. The Scanner asks hasCharAt rather than length, which is only
+// known once the whole file has been decoded.
+class MappedSource implements CharSequence {
+    private static final int CHUNK = 8192;
+
+    private final ByteBuffer bytes;
+    private final Charset charset;
+    private final CharsetDecoder decoder;
+    private int length = -1;
+    private char[] window = new char[CHUNK];
+    // Index in the source of window[0], and of the character just past the last one decoded.
+    private int windowStart = 0;
+    private int decoded = 0;
+    private int keepFrom = 0;
+    private boolean flushed = false;
+
+    MappedSource(Path path, Charset charset) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("File is too large to load: " + path);
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        this.charset = charset;
+        this.decoder = newDecoder(charset);
+    }
+
+    // Malformed input is replaced rather than rejected, as new String(bytes, charset) would.
+    private static CharsetDecoder newDecoder(Charset charset) {
+        return charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    // Counts what is left to decode into a small scratch buffer, leaving the window as it is.
+    private long countRemaining() {
+        CharsetDecoder counter = newDecoder(charset);
+        ByteBuffer input = bytes.duplicate();
+        CharBuffer scratch = CharBuffer.allocate(CHUNK);
+        long count = 0;
+        CoderResult result;
+        do {
+            result = counter.decode(input, scratch, true);
+            count += scratch.position();
+            scratch.clear();
+        } while (result.isOverflow());
+        do {
+            result = counter.flush(scratch);
+            count += scratch.position();
+            scratch.clear();
+        } while (result.isOverflow());
+        return count;
+    }
+
+    // Identifies this exact text: a hash of the file's bytes and of the encoding they're read in.
+    byte[] contentHash() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(bytes.duplicate());
+            digest.update(charset.name().getBytes(StandardCharsets.UTF_8));
+            return digest.digest();
+        } catch (NoSuchAlgorithmException error) {
+            throw new IllegalStateException(error);
+        }
+    }
+
+    // Promises that nothing before index will be asked for again, so it can be dropped from the window.
+    void discardBefore(int index) {
+        if (index > keepFrom) keepFrom = index;
+    }
+
+    // Whether the text goes on as far as index, decoding up to it if need be.
+    boolean hasCharAt(int index) {
+        while (index >= decoded && !flushed) decodeMore();
+        return index < decoded;
+    }
+
+    @Override
+    public int length() {
+        if (length == -1) {
+            long count = decoded + (flushed ? 0 : countRemaining());
+            if (count > Integer.MAX_VALUE) throw new IllegalStateException("File is too large to load.");
+            length = (int)count;
+        }
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < windowStart || !hasCharAt(index)) throw new IndexOutOfBoundsException("index " + index);
+        return window[index - windowStart];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (end > start) charAt(end - 1);
+        if (start < windowStart || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end);
+        }
+        return new String(window, start - windowStart, end - start);
+    }
+
+    // Only the text still in the window: decoding the whole file again is what this class is here to avoid.
+    @Override
+    public String toString() {
+        return new String(window, 0, decoded - windowStart);
+    }
+
+    private void decodeMore() {
+        if (keepFrom > windowStart) {
+            System.arraycopy(window, keepFrom - windowStart, window, 0, decoded - keepFrom);
+            windowStart = keepFrom;
+        }
+        int used = decoded - windowStart;
+        if (window.length - used < CHUNK) window = Arrays.copyOf(window, Math.max(window.length * 2, used + CHUNK));
+
+        CharBuffer output = CharBuffer.wrap(window, used, window.length - used);
+        if (!flushed && decoder.decode(bytes, output, true).isUnderflow()) {
+            flushed = decoder.flush(output).isUnderflow();
+        }
+        decoded = windowStart + output.position();
+    }
+}
@@ -0,0 +1,59 @@
+package com.craftinginterpreters.language;
+
+// A function written in Java that scripts can call. A subclass overrides whichever of call0, call1, call2 and
+// callN fits its arity. The first three are handed their arguments as they are, so calling them allocates
+// nothing; callN takes any other number of arguments in an array, and is what the others fall back to.
+//
+// Arguments are Lox values: null, a Boolean, a Double, a String or one of the script's own objects. number(),
+// string() and bool() check for and unwrap the first three. Results should be Lox values too. Throwing a
+// LoxException reports a runtime error at the call.
+public abstract class NativeFunction {
+    final String name;
+    private final int arity;
+
+    protected NativeFunction(String name, int arity) {
+        this.name = name;
+        this.arity = arity;
+    }
+
+    protected Object call0() {
+        return callN(new Object[0]);
+    }
+
+    protected Object call1(Object argument) {
+        return callN(new Object[] {argument});
+    }
+
+    protected Object call2(Object first, Object second) {
+        return callN(new Object[] {first, second});
+    }
+
+    protected Object callN(Object[] arguments) {
+        throw new IllegalStateException("Native function '" + name + "' takes " + arity + " arguments but " +
+                "doesn't override the call method for them.");
+    }
+
+    public int arity() {
+        return arity;
+    }
+
+    public static double number(Object value) {
+        if (value instanceof Double) return (double)value;
+        throw new LoxException("Expected a number but got " + Interpreter.stringify(value) + ".");
+    }
+
+    public static String string(Object value) {
+        if (value instanceof String) return (String)value;
+        throw new LoxException("Expected a string but got " + Interpreter.stringify(value) + ".");
+    }
+
+    public static boolean bool(Object value) {
+        if (value instanceof Boolean) return (boolean)value;
+        throw new LoxException("Expected true or false but got " + Interpreter.stringify(value) + ".");
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn>";
+    }
+}
@@ -0,0 +1,104 @@
+package com.craftinginterpreters.language;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// The Java functions a host gives its scripts, by name, on top of the built-in clock. Globals that aren't defined
+// by the script or its bindings are looked up here, so however many functions a registry has, none of them is
+// copied into each run's globals. Define everything before the registry is handed to a LoxEngine or
+// LoxScriptEngineFactory; it is read from every thread that runs their scripts.
+//
+// Functions given as lambdas have whatever they return turned into a Lox value, so they can return any Number.
+public final class NativeRegistry {
+    private static final NativeRegistry BUILTINS = new NativeRegistry();
+
+    private final Map<Symbol, NativeFunction> functions = new HashMap<>();
+
+    public NativeRegistry() {
+        define(new NativeFunction("clock", 0) {
+            @Override
+            protected Object call0() {
+                return (double)System.currentTimeMillis() / 1000.0;
+            }
+        });
+    }
+
+    // The registry of an interpreter that wasn't given one.
+    static NativeRegistry builtins() {
+        return BUILTINS;
+    }
+
+    public NativeRegistry define(NativeFunction function) {
+        functions.put(Symbol.of(function.name), function);
+        return this;
+    }
+
+    public NativeRegistry define(String name, Supplier<?> body) {
+        return define(new NativeFunction(name, 0) {
+            @Override
+            protected Object call0() {
+                return Environment.fromJava(body.get());
+            }
+        });
+    }
+
+    public NativeRegistry define(String name, Function<Object, ?> body) {
+        return define(new NativeFunction(name, 1) {
+            @Override
+            protected Object call1(Object argument) {
+                return Environment.fromJava(body.apply(argument));
+            }
+        });
+    }
+
+    public NativeRegistry define(String name, BiFunction<Object, Object, ?> body) {
+        return define(new NativeFunction(name, 2) {
+            @Override
+            protected Object call2(Object first, Object second) {
+                return Environment.fromJava(body.apply(first, second));
+            }
+        });
+    }
+
+    public NativeRegistry define(String name, int arity, Function<Object[], ?> body) {
+        return define(new NativeFunction(name, arity) {
+            @Override
+            protected Object callN(Object[] arguments) {
+                return Environment.fromJava(body.apply(arguments));
+            }
+        });
+    }
+
+    // Functions of numbers, whose arguments are checked to be numbers before they are called.
+    public NativeRegistry defineNumber(String name, DoubleUnaryOperator body) {
+        return define(new NativeFunction(name, 1) {
+            @Override
+            protected Object call1(Object argument) {
+                return body.applyAsDouble(number(argument));
+            }
+        });
+    }
+
+    public NativeRegistry defineNumber(String name, DoubleBinaryOperator body) {
+        return define(new NativeFunction(name, 2) {
+            @Override
+            protected Object call2(Object first, Object second) {
+                return body.applyAsDouble(number(first), number(second));
+            }
+        });
+    }
+
+    NativeFunction get(Symbol name) {
+        return functions.get(name);
+    }
+
+    // For the VM, which keeps natives among its other globals.
+    void defineAll(Map<Symbol, Object> globals) {
+        globals.putAll(functions);
+    }
+}
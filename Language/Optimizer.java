@@ -0,0 +1,261 @@
+package com.craftinginterpreters.language;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Runs between the Resolver and the Interpreter, folding expressions whose operands are constants and dropping
+// code that can never run. Nodes are rewritten in place, so the slots and distances the Resolver stored on them
+// stay where they are.
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    // Constants are folded by evaluating them, so a folded expression can't disagree with running it.
+    private final Interpreter folder = new Interpreter(new Context());
+    private int folded = 0;
+    private int branches = 0;
+    private int loops = 0;
+    private int unreachable = 0;
+    private int noEffect = 0;
+
+    List<Stmt> optimize(List<Stmt> statements) {
+        return optimizeAll(statements);
+    }
+
+    // What the pass changed, one line for each kind of change it made.
+    List<String> report() {
+        List<String> lines = new ArrayList<>();
+        if (folded > 0) lines.add("Constant expressions folded: " + folded);
+        if (branches > 0) lines.add("Dead branches removed: " + branches);
+        if (loops > 0) lines.add("Loops that never run removed: " + loops);
+        if (unreachable > 0) lines.add("Unreachable statements removed: " + unreachable);
+        if (noEffect > 0) lines.add("Statements without effect removed: " + noEffect);
+        return lines;
+    }
+
+    private List<Stmt> optimizeAll(List<Stmt> statements) {
+        List<Stmt> optimized = new ArrayList<>();
+        for (int i = 0; i < statements.size(); i++) {
+            Stmt statement = optimize(statements.get(i));
+            if (statement == null) continue;
+            optimized.add(statement);
+
+            // Nothing after a return or a break in the same block can run.
+            if (statement instanceof Stmt.Return || statement instanceof Stmt.Break) {
+                unreachable += statements.size() - i - 1;
+                break;
+            }
+        }
+        return optimized;
+    }
+
+    // Returns the statement to run in place of stmt, or null if there is nothing left to run.
+    private Stmt optimize(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    Expr optimize(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private Expr fold(Expr expr) {
+        try {
+            Object value = folder.evaluate(expr);
+            folded++;
+            return new Expr.Literal(value);
+        } catch (RuntimeError error) {
+            // Left as it is so the error is still reported if the program ever gets here.
+            return expr;
+        }
+    }
+
+    private static boolean isConstant(Expr expr) {
+        return expr instanceof Expr.Literal;
+    }
+
+    private static boolean isTruthy(Expr constant) {
+        return Interpreter.isTruthy(((Expr.Literal)constant).value);
+    }
+
+    private static Stmt emptyBlock() {
+        return new Stmt.Block(new ArrayList<>());
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        stmt.expression = optimize(stmt.expression);
+        if (isConstant(stmt.expression)) {
+            noEffect++;
+            return null;
+        }
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        stmt.body = optimizeAll(stmt.body);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        stmt.expression = optimize(stmt.expression);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer != null) stmt.initializer = optimize(stmt.initializer);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        stmt.statements = optimizeAll(stmt.statements);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        stmt.condition = optimize(stmt.condition);
+        if (isConstant(stmt.condition)) {
+            branches++;
+            if (isTruthy(stmt.condition)) return optimize(stmt.thenBranch);
+            return stmt.elseBranch == null ? null : optimize(stmt.elseBranch);
+        }
+
+        stmt.thenBranch = optimize(stmt.thenBranch);
+        if (stmt.thenBranch == null) stmt.thenBranch = emptyBlock();
+        if (stmt.elseBranch != null) stmt.elseBranch = optimize(stmt.elseBranch);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        stmt.condition = optimize(stmt.condition);
+        if (isConstant(stmt.condition) && !isTruthy(stmt.condition)) {
+            loops++;
+            return null;
+        }
+
+        stmt.body = optimize(stmt.body);
+        if (stmt.body == null) stmt.body = emptyBlock();
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitBreakStmt(Stmt.Break stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value != null) stmt.value = optimize(stmt.value);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitClassStmt(Stmt.Class stmt) {
+        for (Stmt.Function method : stmt.methods) {
+            optimize(method);
+        }
+        return stmt;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        expr.left = optimize(expr.left);
+        expr.right = optimize(expr.right);
+        if (expr.operator.type == TokenType.COMMA && isConstant(expr.left)) {
+            folded++;
+            return expr.right;
+        }
+        if (isConstant(expr.left) && isConstant(expr.right)) return fold(expr);
+        return expr;
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        expr.expression = optimize(expr.expression);
+        if (isConstant(expr.expression)) return expr.expression;
+        return expr;
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        expr.right = optimize(expr.right);
+        if (isConstant(expr.right)) return fold(expr);
+        return expr;
+    }
+
+    @Override
+    public Expr visitTernaryExpr(Expr.Ternary expr) {
+        expr.condition = optimize(expr.condition);
+        expr.result = optimize(expr.result);
+        expr.altResult = optimize(expr.altResult);
+        if (!isConstant(expr.condition)) return expr;
+
+        // Both arms are evaluated whichever is picked, so the other one can only go if that has no effect.
+        Expr chosen = isTruthy(expr.condition) ? expr.result : expr.altResult;
+        Expr other = isTruthy(expr.condition) ? expr.altResult : expr.result;
+        if (!isConstant(other)) return expr;
+        folded++;
+        return chosen;
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        expr.value = optimize(expr.value);
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        expr.left = optimize(expr.left);
+        expr.right = optimize(expr.right);
+        if (!isConstant(expr.left)) return expr;
+
+        folded++;
+        if (expr.operator.type == TokenType.OR) return isTruthy(expr.left) ? expr.left : expr.right;
+        return isTruthy(expr.left) ? expr.right : expr.left;
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        expr.callee = optimize(expr.callee);
+        for (int i = 0; i < expr.arguments.size(); i++) {
+            expr.arguments.set(i, optimize(expr.arguments.get(i)));
+        }
+        return expr;
+    }
+
+    @Override
+    public Expr visitGetExpr(Expr.Get expr) {
+        expr.object = optimize(expr.object);
+        return expr;
+    }
+
+    @Override
+    public Expr visitSetExpr(Expr.Set expr) {
+        expr.object = optimize(expr.object);
+        expr.value = optimize(expr.value);
+        return expr;
+    }
+
+    @Override
+    public Expr visitThisExpr(Expr.This expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitSuperExpr(Expr.Super expr) {
+        return expr;
+    }
+}
@@ -8,15 +8,28 @@ import static com.craftinginterpreters.language.TokenType.*;
 
 public class Parser {
     private static class ParseError extends RuntimeException {}
-    private final List<Token> tokens;
-    private int current = 0;
+    private final Scanner scanner;
+    // Tokens are pulled from the Scanner one at a time; the parser never needs more than the one it is looking at
+    // and the one it just consumed.
+    private Token current;
+    private Token previous = null;
+    // Whether a while or for has been seen yet, which is all a break needs to be accepted.
+    private boolean sawLoop = false;
     // Added boolean function to check if we're currently examining parameters. If so, comma
     // operator is not valid.
     private boolean inFunction = false;
-    private static final Interpreter exInterpreter = new Interpreter();
+    private final Context context;
+    // Runs expressions left without a semicolon as they are parsed, made the first time there is one.
+    private Interpreter exInterpreter = null;
+    // Set once an expression left without a semicolon has been run as it was parsed, printing its value. The
+    // embedding API turns that off, since there the value of a script's last expression is its result.
+    boolean evaluatedWhileParsing = false;
+    boolean evaluateWhileParsing = true;
 
-    Parser(List<Token> tokens) {
-        this.tokens = tokens;
+    Parser(Scanner scanner, Context context) {
+        this.scanner = scanner;
+        this.context = context;
+        this.current = scanner.nextToken();
     }
 
     List<Stmt> parse() {
@@ -33,10 +46,11 @@ public class Parser {
     }
 
     private Stmt declaration() {
+        int line = current.line;
         try {
-            if (match(CLASS)) return classDeclaration();
-            if (match(FUN)) return function("function");
-            if (match(VAR)) return varDeclaration();
+            if (match(CLASS)) return startingOn(line, classDeclaration());
+            if (match(FUN)) return startingOn(line, function("function"));
+            if (match(VAR)) return startingOn(line, varDeclaration());
             return statement();
         } catch (ParseError error) {
             synchronize();
@@ -66,25 +80,26 @@ public class Parser {
     }
 
     private Stmt statement() {
-        if (match(BREAK)) return breakStatement();
-        if (match(FOR)) return forStatement();
-        if (match(IF)) return ifStatement();
-        if (match(RETURN)) return returnStatement();
-        if (match(PRINT)) return printStatement();
-        if (match(WHILE)) return whileStatement();
-        if (match(LEFT_BRACE)) return new Stmt.Block(block());
-        return expressionStatement();
+        int line = current.line;
+        if (match(BREAK)) return startingOn(line, breakStatement());
+        if (match(FOR)) return startingOn(line, forStatement());
+        if (match(IF)) return startingOn(line, ifStatement());
+        if (match(RETURN)) return startingOn(line, returnStatement());
+        if (match(PRINT)) return startingOn(line, printStatement());
+        if (match(WHILE)) return startingOn(line, whileStatement());
+        if (match(LEFT_BRACE)) return startingOn(line, new Stmt.Block(block()));
+        return startingOn(line, expressionStatement());
+    }
+
+    private static Stmt startingOn(int line, Stmt stmt) {
+        stmt.setLine(line);
+        return stmt;
     }
 
     private Stmt breakStatement() {
         Token keyword = previous();
         consume(SEMICOLON, "Expect ';' after 'break'");
-        int index = current;
-        while (index >= 0) {
-            if (tokens.get(index).type == WHILE || tokens.get(index).type == FOR) break;
-            index--;
-        }
-        if (index == -1) throw error(tokens.get(current), "Break statement has no enclosing loop.");
+        if (!sawLoop && !check(WHILE) && !check(FOR)) throw error(peek(), "Break statement has no enclosing loop.");
         return new Stmt.Break(keyword);
     }
 
@@ -182,7 +197,11 @@ public class Parser {
     private Stmt expressionStatement() {
         Expr expr = expression();
         if (check(SEMICOLON)) advance();
-        else exInterpreter.interpretEx(expr);
+        else if (evaluateWhileParsing) {
+            if (exInterpreter == null) exInterpreter = new Interpreter(context);
+            exInterpreter.interpretEx(expr);
+            evaluatedWhileParsing = true;
+        }
         return new Stmt.Expression(expr);
     }
 
@@ -285,8 +304,8 @@ public class Parser {
     // Implementing C-style comma operator.
     private Expr comma() {
         if (match(COMMA)) {
-            System.err.println("Error: Comma operator needs to have operand preceding it.\n" + "Line " +
-                    previous().line + "| at '" + previous().lexeme + "'");
+            context.warning("Error: Comma operator needs to have operand preceding it.\n" + "Line " +
+                    previous().line + "| at '" + previous().text() + "'");
         }
         Expr expr = ternary();
 
@@ -301,8 +320,8 @@ public class Parser {
     // Implementing the ternary operator.
     private Expr ternary() {
         if (match(QUESTION)) {
-            System.err.println("Error: Ternary operator needs to have condition preceding ?.\n" + "Line " +
-                    previous().line + "| at '" + previous().lexeme + "'");
+            context.warning("Error: Ternary operator needs to have condition preceding ?.\n" + "Line " +
+                    previous().line + "| at '" + previous().text() + "'");
         }
         Expr expr = equality();
 
@@ -319,8 +338,8 @@ public class Parser {
 
     private Expr equality() {
         if (match(BANG_EQUAL, EQUAL_EQUAL)) {
-            System.err.println("Error: Operator needs to have operand preceding it.\n" + "Line " +
-                    previous().line + "| at '" + previous().lexeme + "'");
+            context.warning("Error: Operator needs to have operand preceding it.\n" + "Line " +
+                    previous().line + "| at '" + previous().text() + "'");
         }
         Expr expr = comparison();
 
@@ -356,7 +375,11 @@ public class Parser {
     }
 
     private Token advance() {
-        if (!isAtEnd()) current++;
+        if (!isAtEnd()) {
+            previous = current;
+            current = scanner.nextToken();
+            if (previous.type == WHILE || previous.type == FOR) sawLoop = true;
+        }
         return previous();
     }
 
@@ -365,15 +388,15 @@ public class Parser {
     }
 
     private Token peek() {
-        return tokens.get(current);
+        return current;
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return previous;
     }
 
     private ParseError error(Token token, String message) {
-        Language.error(token, message);
+        context.error(token, message);
         return new ParseError();
     }
 
@@ -401,8 +424,8 @@ public class Parser {
 
     private Expr comparison() {
         if (match(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
-            System.err.println("Error: Operator needs to have operand preceding it.\n" + "Line " +
-                    previous().line + "| at '" + previous().lexeme + "'");
+            context.warning("Error: Operator needs to have operand preceding it.\n" + "Line " +
+                    previous().line + "| at '" + previous().text() + "'");
         }
         Expr expr = term();
 
@@ -417,8 +440,8 @@ public class Parser {
 
     private Expr term() {
         if (match(MINUS, PLUS)) {
-            System.err.println("Error: Operator needs to have operand preceding it.\n" + "Line " +
-                    previous().line + "| at '" + previous().lexeme + "'");
+            context.warning("Error: Operator needs to have operand preceding it.\n" + "Line " +
+                    previous().line + "| at '" + previous().text() + "'");
         }
         Expr expr = factor();
 
@@ -433,8 +456,8 @@ public class Parser {
 
     private Expr factor() {
         if (match(SLASH, STAR)) {
-            System.err.println("Error: Operator needs to have operand preceding it.\n" + "Line " +
-                    previous().line + "| at '" + previous().lexeme + "'");
+            context.warning("Error: Operator needs to have operand preceding it.\n" + "Line " +
+                    previous().line + "| at '" + previous().text() + "'");
         }
         Expr expr = unary();
 
@@ -0,0 +1,60 @@
+package com.craftinginterpreters.language;
+
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// A script compiled by LoxEngine. Every run gets an Interpreter, and so a stack and globals, of its own, and the
+// only things runs share are the tree's specializations and inline caches, which any run may safely update, so
+// one PreparedScript can be run from several threads at once.
+public final class PreparedScript {
+    private final List<Stmt> statements;
+    private final Expr result;
+    private final int scriptSlots;
+    private final PrintStream out;
+    private final PrintStream err;
+    private final NativeRegistry natives;
+
+    PreparedScript(List<Stmt> statements, Expr result, int scriptSlots, PrintStream out, PrintStream err,
+                   NativeRegistry natives) {
+        this.statements = Collections.unmodifiableList(statements);
+        this.result = result;
+        this.scriptSlots = scriptSlots;
+        this.out = out;
+        this.err = err;
+        this.natives = natives;
+    }
+
+    public Object run() {
+        return run(Collections.emptyMap());
+    }
+
+    // Defines each binding as a global, then runs the script. If its last statement is an expression, that
+    // expression's value is returned, and otherwise null. Lox has only the one kind of number, so any Number
+    // given is passed in as a Double.
+    public Object run(Map<String, ?> bindings) {
+        Interpreter interpreter = new Interpreter(new Context(out, err), null, natives);
+        for (Map.Entry<String, ?> binding : bindings.entrySet()) {
+            interpreter.globals.define(Symbol.of(binding.getKey()), Environment.fromJava(binding.getValue()));
+        }
+        return run(interpreter);
+    }
+
+    // Runs the script with the bindings themselves as its globals, for javax.script.
+    Object run(Map<String, Object> bindings, PrintStream out, PrintStream err) {
+        return run(new Interpreter(new Context(out, err), bindings, natives));
+    }
+
+    private Object run(Interpreter interpreter) {
+        interpreter.reserveScriptSlots(scriptSlots);
+        try {
+            return interpreter.run(statements, result);
+        } catch (RuntimeError error) {
+            throw new LoxException(error.getMessage(), error.token.line);
+        } catch (StackOverflowError error) {
+            // Calls turn this into a RuntimeError with a line, so only recursion elsewhere gets here.
+            throw new LoxException("Stack overflow.", 0);
+        }
+    }
+}
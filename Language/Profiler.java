@@ -0,0 +1,224 @@
+package com.craftinginterpreters.language;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
+
+// Samples what the Interpreter is doing about once a millisecond, from a thread of its own, and reports self and
+// total time for each function and each line along with call counts. The samples are also written out as
+// collapsed stacks, one line for each distinct stack, which flame graph tools read.
+//
+// The Interpreter keeps a shadow stack of the functions it is in, and the line each of them has reached, only
+// while a profiler is attached. The sampler reads that stack without any locking, so a sample taken just as a
+// call is made or returns can be slightly off, which doesn't matter once there are enough of them.
+class Profiler {
+    private static final long INTERVAL_NANOS = 1_000_000;
+    private static final int REPORTED_LINES = 20;
+
+    // Something that shows up as a frame: a function, method, class or native function.
+    static class Site {
+        final String name;
+        // Written only by the interpreter thread, and read once sampling has stopped.
+        long calls = 0;
+
+        Site(String name) {
+            this.name = name;
+        }
+    }
+
+    private final Site script = new Site("<script>");
+    private final Map<Stmt.Function, Site> functions = new IdentityHashMap<>();
+    private final Map<Object, Site> others = new IdentityHashMap<>();
+
+    private volatile Site[] frames = new Site[64];
+    private volatile int[] lines = new int[64];
+    private volatile int depth = 1;
+
+    // Owned by the sampler thread until it has been joined.
+    private final Map<Site, Long> selfTime = new HashMap<>();
+    private final Map<Site, Long> totalTime = new HashMap<>();
+    private final Map<Integer, Long> lineSelfTime = new HashMap<>();
+    private final Map<Integer, Long> lineTotalTime = new HashMap<>();
+    private final Map<String, Long> stacks = new HashMap<>();
+    private long sampledTime = 0;
+    private int samples = 0;
+
+    private final Thread sampler = new Thread(this::sample, "jlox-profiler");
+    private volatile boolean running = false;
+
+    Profiler() {
+        frames[0] = script;
+        sampler.setDaemon(true);
+    }
+
+    // Does nothing if sampling has already started, as it has after the first line typed at the prompt.
+    void start() {
+        if (running) return;
+        running = true;
+        sampler.start();
+    }
+
+    // Stops sampling and waits for the sampler to finish, after which the report can be made.
+    void stop() {
+        running = false;
+        try {
+            sampler.join();
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Methods are named after their class, which the declaration alone doesn't know.
+    void nameMethods(Stmt.Class klass) {
+        for (Stmt.Function method : klass.methods) {
+            functions.computeIfAbsent(method,
+                    m -> new Site(klass.name.lexeme + "." + method.name.lexeme + ":" + method.name.line));
+        }
+    }
+
+    Site site(Stmt.Function declaration) {
+        Site site = functions.get(declaration);
+        if (site == null) {
+            site = new Site(declaration.name.lexeme + ":" + declaration.name.line);
+            functions.put(declaration, site);
+        }
+        return site;
+    }
+
+    Site site(LanguageClass klass) {
+        return others.computeIfAbsent(klass, k -> new Site(klass.name + "()"));
+    }
+
+    Site site(NativeFunction function) {
+        return others.computeIfAbsent(function, k -> new Site("<native " + function.name + ">"));
+    }
+
+    void enter(Site site) {
+        site.calls++;
+        Site[] frames = this.frames;
+        int[] lines = this.lines;
+        if (depth == frames.length) {
+            frames = Arrays.copyOf(frames, depth * 2);
+            lines = Arrays.copyOf(lines, depth * 2);
+            this.frames = frames;
+            this.lines = lines;
+        }
+        frames[depth] = site;
+        lines[depth] = 0;
+        depth++;
+    }
+
+    void exit() {
+        depth--;
+    }
+
+    void line(int line) {
+        lines[depth - 1] = line;
+    }
+
+    private void sample() {
+        long last = System.nanoTime();
+        while (running) {
+            LockSupport.parkNanos(INTERVAL_NANOS);
+            long now = System.nanoTime();
+            record(now - last);
+            last = now;
+        }
+    }
+
+    private void record(long elapsed) {
+        int depth = this.depth;
+        Site[] frames = this.frames;
+        int[] lines = this.lines;
+        if (depth == 0 || depth > frames.length || depth > lines.length) return;
+
+        samples++;
+        sampledTime += elapsed;
+        Set<Site> seenSites = new HashSet<>();
+        Set<Integer> seenLines = new HashSet<>();
+        StringBuilder stack = new StringBuilder();
+        // The interpreter goes on pushing frames and changing lines while this runs, so each slot is read once and
+        // self time goes to the same top site and line that total time was counted for.
+        Site top = null;
+        int topLine = 0;
+        for (int i = 0; i < depth; i++) {
+            Site site = frames[i];
+            int line = lines[i];
+            if (site == null) return;
+            // Recursive calls count toward a function's total only once.
+            if (seenSites.add(site)) totalTime.merge(site, elapsed, Long::sum);
+            if (line != 0 && seenLines.add(line)) lineTotalTime.merge(line, elapsed, Long::sum);
+            if (i > 0) stack.append(';');
+            stack.append(site.name);
+            top = site;
+            topLine = line;
+        }
+        selfTime.merge(top, elapsed, Long::sum);
+        if (topLine != 0) lineSelfTime.merge(topLine, elapsed, Long::sum);
+        stacks.merge(stack.toString(), 1L, Long::sum);
+    }
+
+    void report(PrintStream out) {
+        out.println(String.format("Profile: %d samples over %.1f ms", samples, millis(sampledTime)));
+        out.println();
+        out.println(String.format("%-32s %10s %7s %10s %7s %10s", "Function", "Self ms", "Self", "Total ms", "Total",
+                "Calls"));
+        List<Site> sites = new ArrayList<>(functions.values());
+        sites.addAll(others.values());
+        sites.add(script);
+        sites.removeIf(site -> site.calls == 0 && !totalTime.containsKey(site));
+        sites.sort((a, b) -> Long.compare(time(totalTime, b), time(totalTime, a)));
+        for (Site site : sites) {
+            long self = time(selfTime, site);
+            long total = time(totalTime, site);
+            out.println(String.format("%-32s %10.1f %6.1f%% %10.1f %6.1f%% %10s", site.name, millis(self),
+                    percent(self), millis(total), percent(total), site == script ? "" : site.calls));
+        }
+
+        out.println();
+        out.println(String.format("%-32s %10s %7s %10s %7s", "Line", "Self ms", "Self", "Total ms", "Total"));
+        List<Integer> hottest = new ArrayList<>(lineSelfTime.keySet());
+        hottest.sort((a, b) -> Long.compare(lineSelfTime.get(b), lineSelfTime.get(a)));
+        for (Integer line : hottest.subList(0, Math.min(REPORTED_LINES, hottest.size()))) {
+            long self = lineSelfTime.get(line);
+            long total = time(lineTotalTime, line);
+            out.println(String.format("%-32s %10.1f %6.1f%% %10.1f %6.1f%%", "line " + line, millis(self),
+                    percent(self), millis(total), percent(total)));
+        }
+    }
+
+    // One line for each distinct stack, its frames outermost first and separated by semicolons, then the
+    // number of samples that caught it.
+    void writeCollapsedStacks(Path path) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, Long> entry : stacks.entrySet()) {
+                out.println(entry.getKey() + " " + entry.getValue());
+            }
+        }
+    }
+
+    private static <K> long time(Map<K, Long> times, K key) {
+        Long time = times.get(key);
+        return time == null ? 0 : time;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private double percent(long nanos) {
+        return sampledTime == 0 ? 0 : 100.0 * nanos / sampledTime;
+    }
+}
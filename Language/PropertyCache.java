@@ -0,0 +1,50 @@
+package com.craftinginterpreters.language;
+
+// Inline cache kept on each Get and Set node. It remembers, for the last few shapes seen at that site, which slot
+// holds the property (or, for a Get that finds a method, the method itself) and, for a Set that adds the field,
+// which shape the instance moves to. Once MAX_ENTRIES shapes are cached, a new one pushes out the oldest: every
+// run of a prepared script makes its classes afresh, so shapes from earlier runs would otherwise fill the cache
+// for good.
+//
+// Entries never need invalidating: every class has its own root shape, so a shape pins down the receiver's
+// class, and shapes are immutable, so a method found for a shape can't later be shadowed by a field. Giving an
+// instance that field moves it to a different shape, which simply misses.
+//
+// A tree can be run by several threads at once, so entries are immutable and a new array of them replaces the
+// old one whole. Two threads adding at the same moment can lose one of the entries, which only means a miss.
+class PropertyCache {
+    private static final int MAX_ENTRIES = 4;
+    private static final Entry[] EMPTY = new Entry[0];
+
+    static final class Entry {
+        final Shape shape;
+        final Shape target;
+        final int slot;
+        final LanguageFunction method;
+
+        private Entry(Shape shape, Shape target, int slot, LanguageFunction method) {
+            this.shape = shape;
+            this.target = target;
+            this.slot = slot;
+            this.method = method;
+        }
+    }
+
+    private volatile Entry[] entries = EMPTY;
+
+    Entry find(Shape shape) {
+        for (Entry entry : entries) {
+            if (entry.shape == shape) return entry;
+        }
+        return null;
+    }
+
+    void add(Shape shape, Shape target, int slot, LanguageFunction method) {
+        Entry[] entries = this.entries;
+        int kept = Math.min(entries.length, MAX_ENTRIES - 1);
+        Entry[] added = new Entry[kept + 1];
+        System.arraycopy(entries, entries.length - kept, added, 0, kept);
+        added[kept] = new Entry(shape, target, slot, method);
+        this.entries = added;
+    }
+}
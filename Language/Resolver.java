@@ -1,28 +1,75 @@
 package com.craftinginterpreters.language;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
-import java.util.Arrays;
 
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     private final Interpreter interpreter;
-    // Changed scopes from map of String to boolean to a map of String to int array of 3 size where
-    // array[0] = 0 (equivalent to false) or 1 (equivalent to true).
-    // array[1] = index within scope.
-    // array[2] = distance.
-    private final Stack<Map<String, int[]>> scopes = new Stack<>();
-    private final Stack<Map<String, Boolean>> visitations = new Stack<>();
+    private final Context context;
+    // Every local lives in a flat frame belonging to its enclosing function (or to the top-level script), so a
+    // block only claims slots in that frame and hands them back when it ends. Locals that an inner function
+    // refers to are marked captured, and only those are boxed into cells at runtime.
+    private final Stack<Scope> scopes = new Stack<>();
+    private final Frame script = new Frame(null);
+    private Frame currentFrame = script;
     private FunctionType currentFunction = FunctionType.NONE;
+    // Loops around the statement being resolved within the current function; a break can't leave a function.
+    private int loopDepth = 0;
 
     Resolver(Interpreter interpreter) {
         this.interpreter = interpreter;
+        this.context = interpreter.context;
+    }
+
+    private static class Variable {
+        final int slot;
+        // The Var, Function or Class statement that declared it; null for parameters, "this" and "super".
+        final Stmt declaration;
+        // "this" and "super" are implicit, so an unused one isn't worth a warning.
+        final boolean implicit;
+        boolean defined = false;
+        boolean used = false;
+        boolean captured = false;
+
+        Variable(int slot, Stmt declaration, boolean implicit) {
+            this.slot = slot;
+            this.declaration = declaration;
+            this.implicit = implicit;
+        }
+    }
+
+    private static class Scope {
+        final Map<Symbol, Variable> variables = new HashMap<>();
+        final Frame frame;
+        // Set on a function's outermost scope, which holds its receiver and parameters.
+        final Stmt.Function function;
+        final int firstSlot;
+
+        Scope(Frame frame, Stmt.Function function) {
+            this.frame = frame;
+            this.function = function;
+            this.firstSlot = frame.nextSlot;
+        }
+    }
+
+    private static class Frame {
+        final Frame enclosing;
+        // For each upvalue, whether it captures a slot of the enclosing frame or one of the enclosing upvalues.
+        final List<Boolean> upvalueIsLocal = new ArrayList<>();
+        final List<Integer> upvalueIndices = new ArrayList<>();
+        int nextSlot = 0;
+        int maxSlots = 0;
+
+        Frame(Frame enclosing) {
+            this.enclosing = enclosing;
+        }
     }
 
     private enum FunctionType {
         NONE,
-        BLOCK,
         FUNCTION,
         INITIALIZER,
         METHOD
@@ -38,7 +85,6 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
 
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
-        currentFunction = FunctionType.BLOCK;
         beginScope();
         resolve(stmt.statements);
         endScope();
@@ -49,11 +95,11 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     public Void visitClassStmt(Stmt.Class stmt) {
         ClassType enclosingClass = currentClass;
         currentClass = ClassType.CLASS;
-        declare(stmt.name);
+        declare(stmt.name, stmt);
         define(stmt.name);
 
-        if (stmt.superclass != null && stmt.name.lexeme.equals(stmt.superclass.name.lexeme)) {
-            Language.error(stmt.superclass.name, "A class can't inherit from itself.");
+        if (stmt.superclass != null && stmt.name.symbol == stmt.superclass.name.symbol) {
+            context.error(stmt.superclass.name, "A class can't inherit from itself.");
         }
 
         if (stmt.superclass != null) {
@@ -63,20 +109,16 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
 
         if (stmt.superclass != null) {
             beginScope();
-            scopes.peek().put("super", new int[]{1, scopes.peek().size()});
+            stmt.setSuperSlot(declareImplicit(Symbol.SUPER));
         }
 
-        beginScope();
-        scopes.peek().put("this", new int[]{1, scopes.peek().size()});
-
         for (Stmt.Function method : stmt.methods) {
             FunctionType declaration = FunctionType.METHOD;
-            if (method.name.lexeme.equals("init")) {
+            if (method.name.symbol == Symbol.INIT) {
                 declaration = FunctionType.INITIALIZER;
             }
             resolveFunction(method, declaration);
         }
-        endScope();
         if (stmt.superclass != null) endScope();
         currentClass = enclosingClass;
         return null;
@@ -92,7 +134,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
 
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt) {
-        declare(stmt.name);
+        declare(stmt.name, stmt);
         define(stmt.name);
 
         resolveFunction(stmt, FunctionType.FUNCTION);
@@ -116,12 +158,16 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     @Override
     public Void visitReturnStmt(Stmt.Return stmt) {
         if (currentFunction == FunctionType.NONE) {
-            Language.error(stmt.keyword, "Can't return from top-level code.");
+            context.error(stmt.keyword, "Can't return from top-level code.");
         }
 
         if (stmt.value != null) {
             if (currentFunction == FunctionType.INITIALIZER) {
-                Language.error(stmt.keyword, "Can't return a value from an initializer");
+                context.error(stmt.keyword, "Can't return a value from an initializer");
+            }
+            // Only a function's own frame can be handed over to the call, so a return at top level never makes one.
+            if (currentFunction != FunctionType.NONE && stmt.value instanceof Expr.Call) {
+                ((Expr.Call)stmt.value).setTail(true);
             }
             resolve(stmt.value);
         }
@@ -132,21 +178,23 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     @Override
     public Void visitWhileStmt(Stmt.While stmt) {
         resolve(stmt.condition);
+        loopDepth++;
         resolve(stmt.body);
+        loopDepth--;
         return null;
     }
 
     @Override
     public Void visitBreakStmt(Stmt.Break stmt) {
-        if (currentFunction == FunctionType.NONE) {
-            Language.error(stmt.keyword, "Can't break outside of a loop.");
+        if (loopDepth == 0) {
+            context.error(stmt.keyword, "Can't break outside of a loop.");
         }
         return null;
     }
 
     @Override
     public Void visitVarStmt(Stmt.Var stmt) {
-        declare(stmt.name);
+        declare(stmt.name, stmt);
         if (stmt.initializer != null) {
             resolve(stmt.initializer);
         }
@@ -213,18 +261,19 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     @Override
     public Void visitSuperExpr(Expr.Super expr) {
         if (currentClass == ClassType.NONE) {
-            Language.error(expr.keyword, "Can't use 'super' outside of a class.");
+            context.error(expr.keyword, "Can't use 'super' outside of a class.");
         } else if (currentClass != ClassType.SUBCLASS){
-            Language.error(expr.keyword, "Can't use 'super' in a class with no superclass.");
+            context.error(expr.keyword, "Can't use 'super' in a class with no superclass.");
         }
         resolveLocal(expr, expr.keyword);
+        resolveLocal(expr.receiver, expr.receiver.keyword);
         return null;
     }
 
     @Override
     public Void visitThisExpr(Expr.This expr) {
         if (currentClass == ClassType.NONE) {
-            Language.error(expr.keyword, "Can't use 'this' outside of a class.");
+            context.error(expr.keyword, "Can't use 'this' outside of a class.");
             return null;
         }
         resolveLocal(expr, expr.keyword);
@@ -248,8 +297,9 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     @Override
     public Void visitVariableExpr(Expr.Variable expr) {
         if (scopes.isEmpty()) return null;
-        if (!scopes.peek().isEmpty() && scopes.peek().get(expr.name.lexeme)[0] == 0) {
-            Language.error(expr.name, "Can't read local variable in its own initializer.");
+        Variable local = scopes.peek().variables.get(expr.name.symbol);
+        if (local != null && !local.defined) {
+            context.error(expr.name, "Can't read local variable in its own initializer.");
         }
 
         resolveLocal(expr, expr.name);
@@ -260,20 +310,43 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
         for (Stmt statement : statements) {
             resolve(statement);
         }
+        if (scopes.isEmpty()) interpreter.reserveScriptSlots(script.maxSlots);
+    }
+
+    // Slots the top level of the script needs, which AstCache saves along with the tree.
+    int scriptSlots() {
+        return script.maxSlots;
     }
 
     private void resolveFunction(Stmt.Function function, FunctionType type) {
         FunctionType enclosingFunction = currentFunction;
+        int enclosingLoopDepth = loopDepth;
         currentFunction = type;
+        loopDepth = 0;
+        currentFrame = new Frame(currentFrame);
 
-        beginScope();
+        scopes.push(new Scope(currentFrame, function));
+        // Methods receive "this" in slot zero, ahead of their parameters.
+        if (type == FunctionType.METHOD || type == FunctionType.INITIALIZER) declareImplicit(Symbol.THIS);
         for (Token param : function.params) {
-            declare(param);
+            declare(param, null);
             define(param);
         }
         resolve(function.body);
         endScope();
+
+        function.setSlots(currentFrame.maxSlots);
+        int[] indices = new int[currentFrame.upvalueIndices.size()];
+        boolean[] isLocal = new boolean[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = currentFrame.upvalueIndices.get(i);
+            isLocal[i] = currentFrame.upvalueIsLocal.get(i);
+        }
+        function.setUpvalues(isLocal, indices);
+
+        currentFrame = currentFrame.enclosing;
         currentFunction = enclosingFunction;
+        loopDepth = enclosingLoopDepth;
     }
 
     private void resolve(Stmt stmt) {
@@ -285,45 +358,93 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     }
 
     private void beginScope() {
-        scopes.push(new HashMap<String, int[]>());
-        visitations.push(new HashMap<String, Boolean>());
+        scopes.push(new Scope(currentFrame, null));
     }
 
     private void endScope() {
-        Map<String, Boolean> localScope = visitations.peek();
-        for (String variables : localScope.keySet()) {
-            if (localScope.get(variables) == Boolean.FALSE) System.err.println("Local variable " + variables +
+        Scope scope = scopes.pop();
+        List<Integer> boxedSlots = new ArrayList<>();
+        for (Symbol name : scope.variables.keySet()) {
+            Variable variable = scope.variables.get(name);
+            if (!variable.used && !variable.implicit) context.warning("Local variable " + name +
                         " is never used.");
+            if (!variable.captured) continue;
+
+            if (variable.declaration != null) variable.declaration.setCaptured(true);
+            else if (scope.function != null) boxedSlots.add(variable.slot);
+        }
+        if (scope.function != null) {
+            scope.function.setBoxedSlots(boxedSlots.stream().mapToInt(Integer::intValue).toArray());
         }
-        visitations.pop();
-        scopes.pop();
+
+        // The block's slots are free for whatever its enclosing scope declares next.
+        scope.frame.nextSlot = scope.firstSlot;
     }
 
-    private void declare(Token name) {
+    private void declare(Token name, Stmt declaration) {
         if (scopes.isEmpty()) return;
 
-        Map<String, int[]> scope = scopes.peek();
-        if (scope.containsKey(name.lexeme)) {
-            Language.error(name, "Already a variable with this name in this scope.");
+        Scope scope = scopes.peek();
+        if (scope.variables.containsKey(name.symbol)) {
+            context.error(name, "Already a variable with this name in this scope.");
         }
-        if (!visitations.isEmpty()) visitations.peek().put(name.lexeme, false);
-        scope.put(name.lexeme, new int[]{0, scope.size() - 1});
+        Variable variable = new Variable(nextSlot(scope.frame), declaration, false);
+        scope.variables.put(name.symbol, variable);
+        if (declaration != null) declaration.setSlot(variable.slot);
+    }
+
+    private int declareImplicit(Symbol name) {
+        Scope scope = scopes.peek();
+        Variable variable = new Variable(nextSlot(scope.frame), null, true);
+        variable.defined = true;
+        scope.variables.put(name, variable);
+        return variable.slot;
+    }
+
+    private int nextSlot(Frame frame) {
+        int slot = frame.nextSlot++;
+        if (frame.nextSlot > frame.maxSlots) frame.maxSlots = frame.nextSlot;
+        return slot;
     }
 
     private void define(Token name) {
         if (scopes.isEmpty()) return;
-        scopes.peek().put(name.lexeme, new int[]{1, scopes.peek().size() - 1});
+        scopes.peek().variables.get(name.symbol).defined = true;
     }
 
+    // Resolves to distance 0 and a slot when the variable lives in the current frame, or to the number of
+    // function boundaries crossed and an upvalue index when it was captured from an enclosing function.
     private void resolveLocal(Expr expr, Token name) {
         for (int i = scopes.size() - 1; i >= 0; i--) {
-            if (scopes.get(i).containsKey(name.lexeme)) {
-                visitations.get(i).put(name.lexeme, true);
-                interpreter.resolve(expr, scopes.size() - 1 - i, scopes.get(i).get(name.lexeme)[1]);
-                expr.setDistance(scopes.size() - 1 - i);
-                expr.setIndex(scopes.get(i).get(name.lexeme)[1]);
-                return;
+            Scope scope = scopes.get(i);
+            Variable variable = scope.variables.get(name.symbol);
+            if (variable == null) continue;
+
+            variable.used = true;
+            int distance = 0;
+            int index = variable.slot;
+            if (scope.frame != currentFrame) {
+                variable.captured = true;
+                for (Frame frame = currentFrame; frame != scope.frame; frame = frame.enclosing) distance++;
+                index = resolveUpvalue(currentFrame, scope.frame, variable.slot);
             }
+            expr.setDistance(distance);
+            expr.setIndex(index);
+            return;
+        }
+    }
+
+    private int resolveUpvalue(Frame frame, Frame declaring, int slot) {
+        if (frame.enclosing == declaring) return addUpvalue(frame, true, slot);
+        return addUpvalue(frame, false, resolveUpvalue(frame.enclosing, declaring, slot));
+    }
+
+    private int addUpvalue(Frame frame, boolean isLocal, int index) {
+        for (int i = 0; i < frame.upvalueIndices.size(); i++) {
+            if (frame.upvalueIndices.get(i) == index && frame.upvalueIsLocal.get(i) == isLocal) return i;
         }
+        frame.upvalueIsLocal.add(isLocal);
+        frame.upvalueIndices.add(index);
+        return frame.upvalueIndices.size() - 1;
     }
 }
@@ -1,55 +1,49 @@
 package com.craftinginterpreters.language;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
 import static com.craftinginterpreters.language.TokenType.*;
 
 public class Scanner {
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+    private final CharSequence source;
+    // The same source when it is a mapped file, whose length isn't known until all of it has been decoded.
+    private final MappedSource mapped;
+    private final Context context;
+    // The token the current lexeme produced, if any; whitespace and comments don't produce one.
+    private Token token = null;
     private int start = 0;
     private int current = 0;
     private int line = 1;
     // Keeping track of the count of the beginning of each line so that column can be counted for error report.
     private int startLine = 0;
-    private static final Map<String, TokenType> keywords;
-    static {
-        keywords = new HashMap<>();
-        keywords.put("and",     AND);
-        keywords.put("break",   BREAK);
-        keywords.put("class",   CLASS);
-        keywords.put("else",    ELSE);
-        keywords.put("false",   FALSE);
-        keywords.put("for",     FOR);
-        keywords.put("fun",     FUN);
-        keywords.put("if",      IF);
-        keywords.put("nil",     NIL);
-        keywords.put("or",      OR);
-        keywords.put("print",   PRINT);
-        keywords.put("return",  RETURN);
-        keywords.put("super",   SUPER);
-        keywords.put("this",    THIS);
-        keywords.put("true",    TRUE);
-        keywords.put("var",     VAR);
-        keywords.put("while",   WHILE);
-    }
+    // Powers of ten small enough to be exact doubles, for converting number literals without parsing a string.
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
 
-    Scanner(String source) {
+    Scanner(CharSequence source, Context context) {
         this.source = source;
+        this.mapped = source instanceof MappedSource ? (MappedSource)source : null;
+        this.context = context;
     }
 
-    List<Token> scanTokens() {
+    // Scans just far enough to produce the next token, so the Parser can start before the whole source has been
+    // scanned and no list of every token is ever built. Returns EOF once the source runs out.
+    Token nextToken() {
         while (!isAtEnd()) {
             // We are at the beginning of the next lexeme.
             start = current;
+            // Nothing before this lexeme or the line it's on is needed again, even to report an error.
+            if (mapped != null) {
+                mapped.discardBefore(Math.max(0, Math.min(start, startLine - 1)));
+            }
             scanToken();
+            if (token != null) {
+                Token scanned = token;
+                token = null;
+                return scanned;
+            }
         }
 
-        tokens.add(new Token(EOF, "", null, line));
-        return tokens;
+        return new Token(EOF, "", null, line);
     }
 
     private void scanToken() {
@@ -137,7 +131,7 @@ public class Scanner {
                     identifier();
                 } else {
                     int newIndex = restOfLine(current);
-                    Language.error(line, (current - startLine), source.substring(startLine - 1, newIndex), "Unexpected character.");
+                    context.error(line, (current - startLine), text(startLine - 1, newIndex), "Unexpected character.");
                 }
                 break;
         }
@@ -153,10 +147,52 @@ public class Scanner {
 
     private void identifier() {
         while (isAlphaNumeric(peek())) advance();
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
-        if (type == null) type = IDENTIFIER;
-        addToken(type);
+        token = new Token(keywordType(), Symbol.intern(source, start, current), line);
+    }
+
+    // Keywords are told apart by switching on their first letters and then comparing the rest in place, so no
+    // string has to be built or hashed to find out whether an identifier is one.
+    private TokenType keywordType() {
+        switch (source.charAt(start)) {
+            case 'a': return checkKeyword("and", AND);
+            case 'b': return checkKeyword("break", BREAK);
+            case 'c': return checkKeyword("class", CLASS);
+            case 'e': return checkKeyword("else", ELSE);
+            case 'f':
+                if (current - start > 1) {
+                    switch (source.charAt(start + 1)) {
+                        case 'a': return checkKeyword("false", FALSE);
+                        case 'o': return checkKeyword("for", FOR);
+                        case 'u': return checkKeyword("fun", FUN);
+                    }
+                }
+                break;
+            case 'i': return checkKeyword("if", IF);
+            case 'n': return checkKeyword("nil", NIL);
+            case 'o': return checkKeyword("or", OR);
+            case 'p': return checkKeyword("print", PRINT);
+            case 'r': return checkKeyword("return", RETURN);
+            case 's': return checkKeyword("super", SUPER);
+            case 't':
+                if (current - start > 1) {
+                    switch (source.charAt(start + 1)) {
+                        case 'h': return checkKeyword("this", THIS);
+                        case 'r': return checkKeyword("true", TRUE);
+                    }
+                }
+                break;
+            case 'v': return checkKeyword("var", VAR);
+            case 'w': return checkKeyword("while", WHILE);
+        }
+        return IDENTIFIER;
+    }
+
+    private TokenType checkKeyword(String keyword, TokenType type) {
+        if (current - start != keyword.length()) return IDENTIFIER;
+        for (int i = 1; i < keyword.length(); i++) {
+            if (source.charAt(start + i) != keyword.charAt(i)) return IDENTIFIER;
+        }
+        return type;
     }
 
     private void number() {
@@ -170,7 +206,29 @@ public class Scanner {
             while (isDigit(peek())) advance();
         }
 
-        addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+        token = new Token(NUMBER, null, numberValue(), line);
+    }
+
+    // A literal with at most 15 digits is a whole number below 2^53 divided by an exact power of ten, which a single
+    // division rounds exactly as Double.parseDouble would. Only longer literals need the string parsed.
+    private double numberValue() {
+        long digits = 0;
+        int count = 0;
+        int scale = 0;
+        boolean fraction = false;
+        for (int i = start; i < current; i++) {
+            char c = source.charAt(i);
+            if (c == '.') {
+                fraction = true;
+                continue;
+            }
+            digits = digits * 10 + (c - '0');
+            count++;
+            if (fraction) scale++;
+        }
+
+        if (count > 15) return Double.parseDouble(text(start, current));
+        return digits / POWERS_OF_TEN[scale];
     }
 
     // Implementation of nested multi-line comments. Outermost comment structure of the 'nest'
@@ -182,7 +240,7 @@ public class Scanner {
         }
 
         if (isAtEnd()) {
-            Language.error(line, (current - startLine), source.substring(startLine, current), "Unclosed nested comment.");
+            context.error(line, (current - startLine), text(startLine, current), "Unclosed nested comment.");
             return;
         }
 
@@ -199,7 +257,7 @@ public class Scanner {
         }
 
         if (isAtEnd()) {
-            Language.error(line, (current - startLine), source.substring(startLine, current), "Unclosed multi-line comment.");
+            context.error(line, (current - startLine), text(startLine, current), "Unclosed multi-line comment.");
             return;
         }
 
@@ -220,7 +278,7 @@ public class Scanner {
         }
 
         if (isAtEnd()) {
-            Language.error(line, (current - startLine), source.substring(startLine, current), "Unterminated string.");
+            context.error(line, (current - startLine), text(startLine, current), "Unterminated string.");
             return;
         }
 
@@ -228,7 +286,7 @@ public class Scanner {
         advance();
 
         // Trim the surrounding quotes and unescape any escape characters.
-        String value = source.substring(start + 1, current - 1).replace("\\\\", "\\").
+        String value = text(start + 1, current - 1).replace("\\\\", "\\").
                 replace("\\n", "\n").replace("\\f", "\f").
                 replace("\\r", "\r").replace("\\t", "\t").
                 replace("\\b", "\b").replace("\\'", "'").
@@ -251,13 +309,13 @@ public class Scanner {
     }
 
     private char peekNext() {
-        if (current + 1 >= source.length()) return '\0';
+        if (!inSource(current + 1)) return '\0';
         return source.charAt(current + 1);
     }
 
     // Used only for nested comments.
     private char peekNextNext() {
-        if (current + 2 >= source.length()) return '\0';
+        if (!inSource(current + 2)) return '\0';
         return source.charAt(current + 2);
     }
 
@@ -276,19 +334,55 @@ public class Scanner {
     }
 
     private boolean isAtEnd() {
-        return current >= source.length();
+        return !inSource(current);
+    }
+
+    private boolean inSource(int index) {
+        return mapped != null ? mapped.hasCharAt(index) : index < source.length();
     }
 
     private char advance() {
         return source.charAt(current++);
     }
 
+    private String text(int start, int end) {
+        return source.subSequence(start, end).toString();
+    }
+
+    // Punctuation and operators are always spelled the same, so their lexemes are constants.
     private void addToken(TokenType type) {
-        addToken(type, null);
+        token = new Token(type, lexeme(type), null, line);
+    }
+
+    private static String lexeme(TokenType type) {
+        switch (type) {
+            case LEFT_PAREN: return "(";
+            case RIGHT_PAREN: return ")";
+            case LEFT_BRACE: return "{";
+            case RIGHT_BRACE: return "}";
+            case COMMA: return ",";
+            case DOT: return ".";
+            case MINUS: return "-";
+            case PLUS: return "+";
+            case SEMICOLON: return ";";
+            case SLASH: return "/";
+            case STAR: return "*";
+            case QUESTION: return "?";
+            case COLON: return ":";
+            case BANG: return "!";
+            case BANG_EQUAL: return "!=";
+            case EQUAL: return "=";
+            case EQUAL_EQUAL: return "==";
+            case GREATER: return ">";
+            case GREATER_EQUAL: return ">=";
+            case LESS: return "<";
+            case LESS_EQUAL: return "<=";
+            default: throw new IllegalArgumentException("No fixed lexeme for " + type);
+        }
     }
 
     private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+        String text = text(start, current);
+        token = new Token(type, text, literal, line);
     }
 }
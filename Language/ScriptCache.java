@@ -0,0 +1,35 @@
+package com.craftinginterpreters.language;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+// The scripts compiled by the engines of one LoxScriptEngineFactory, looked up by their source, so evaluating the
+// same source again skips scanning, parsing and resolving. Once there are more than the limit, the script used
+// least recently is dropped.
+class ScriptCache {
+    private final Map<String, PreparedScript> scripts;
+
+    ScriptCache(int limit) {
+        this.scripts = new LinkedHashMap<String, PreparedScript>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedScript> eldest) {
+                return size() > limit;
+            }
+        };
+    }
+
+    // Compiles outside the lock, so a long script doesn't hold up threads after other ones. Two threads compiling
+    // the same new source at once both compile it, and the one that finishes last is kept.
+    PreparedScript get(String source, Function<String, PreparedScript> compiler) {
+        synchronized (scripts) {
+            PreparedScript script = scripts.get(source);
+            if (script != null) return script;
+        }
+        PreparedScript script = compiler.apply(source);
+        synchronized (scripts) {
+            scripts.put(source, script);
+        }
+        return script;
+    }
+}
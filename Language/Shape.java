@@ -0,0 +1,39 @@
+package com.craftinginterpreters.language;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Hidden class describing where an instance keeps each of its fields. Instances of a class start out sharing the
+// class's empty shape, and adding a field moves an instance along a transition to the next shape, so instances
+// that are given the same fields in the same order end up sharing one shape and one slot layout.
+class Shape {
+    private final Map<Symbol, Integer> slots;
+    private final Map<Symbol, Shape> transitions = new HashMap<>();
+    final int size;
+
+    Shape() {
+        this.slots = new HashMap<>();
+        this.size = 0;
+    }
+
+    private Shape(Shape parent, Symbol name) {
+        this.slots = new HashMap<>(parent.slots);
+        this.slots.put(name, parent.size);
+        this.size = parent.size + 1;
+    }
+
+    int slotOf(Symbol name) {
+        Integer slot = slots.get(name);
+        if (slot == null) return -1;
+        return slot;
+    }
+
+    Shape withField(Symbol name) {
+        Shape next = transitions.get(name);
+        if (next == null) {
+            next = new Shape(this, name);
+            transitions.put(name, next);
+        }
+        return next;
+    }
+}
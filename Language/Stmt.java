@@ -16,7 +16,26 @@ abstract class Stmt {
         R visitClassStmt(Class stmt);
     }
 
+    // Child nodes aren't final so that the Optimizer can replace or drop them after resolution.
     String type;
+    // Frame slot of the variable a Var, Function or Class statement declares, or -1 for a global. Captured
+    // locals are boxed into a Cell when declared so closures can share them.
+    int slot = -1;
+    boolean captured = false;
+    // Line the statement starts on, or 0 for those the Parser makes up itself, like the pieces of a for loop.
+    int line = 0;
+
+    void setSlot(int slot) {
+        this.slot = slot;
+    }
+
+    void setCaptured(boolean captured) {
+        this.captured = captured;
+    }
+
+    void setLine(int line) {
+        this.line = line;
+    }
 
     static class Expression extends Stmt {
         Expression(Expr expression) {
@@ -29,7 +48,7 @@ abstract class Stmt {
             return visitor.visitExpressionStmt(this);
         }
 
-        final Expr expression;
+        Expr expression;
     }
 
     static class Print extends Stmt {
@@ -43,7 +62,7 @@ abstract class Stmt {
             return visitor.visitPrintStmt(this);
         }
 
-        final Expr expression;
+        Expr expression;
     }
 
     static class Var extends Stmt {
@@ -59,7 +78,7 @@ abstract class Stmt {
         }
 
         final Token name;
-        final Expr initializer;
+        Expr initializer;
     }
 
     static class Block extends Stmt {
@@ -73,7 +92,7 @@ abstract class Stmt {
             return visitor.visitBlockStmt(this);
         }
 
-        final List<Stmt> statements;
+        List<Stmt> statements;
     }
 
     static class If extends Stmt {
@@ -89,9 +108,9 @@ abstract class Stmt {
             return visitor.visitIfStmt(this);
         }
 
-        final Expr condition;
-        final Stmt thenBranch;
-        final Stmt elseBranch;
+        Expr condition;
+        Stmt thenBranch;
+        Stmt elseBranch;
     }
 
     static class While extends Stmt {
@@ -106,8 +125,8 @@ abstract class Stmt {
             return visitor.visitWhileStmt(this);
         }
 
-        final Expr condition;
-        final Stmt body;
+        Expr condition;
+        Stmt body;
     }
 
     static class Break extends Stmt {
@@ -135,9 +154,30 @@ abstract class Stmt {
             return visitor.visitFunctionStmt(this);
         }
 
+        // Size of the function's frame: its receiver, parameters and every local in its body, counted by the
+        // Resolver.
+        void setSlots(int slots) {
+            this.slots = slots;
+        }
+
+        // Receiver and parameter slots that inner functions capture, which are boxed on entry.
+        void setBoxedSlots(int[] boxedSlots) {
+            this.boxedSlots = boxedSlots;
+        }
+
+        // Each upvalue captures either a slot of the enclosing frame or one of the enclosing function's upvalues.
+        void setUpvalues(boolean[] upvalueIsLocal, int[] upvalueIndices) {
+            this.upvalueIsLocal = upvalueIsLocal;
+            this.upvalueIndices = upvalueIndices;
+        }
+
         final Token name;
         final List<Token> params;
-        final List<Stmt> body;
+        List<Stmt> body;
+        int slots = 0;
+        int[] boxedSlots = new int[0];
+        boolean[] upvalueIsLocal = new boolean[0];
+        int[] upvalueIndices = new int[0];
     }
 
     static class Return extends Stmt {
@@ -153,7 +193,7 @@ abstract class Stmt {
         }
 
         final Token keyword;
-        final Expr value;
+        Expr value;
     }
 
     static class Class extends Stmt {
@@ -169,9 +209,15 @@ abstract class Stmt {
             return visitor.visitClassStmt(this);
         }
 
+        // Slot of the implicit "super" variable the methods close over.
+        void setSuperSlot(int superSlot) {
+            this.superSlot = superSlot;
+        }
+
         final Token name;
         final List<Stmt.Function> methods;
         final Expr.Variable superclass;
+        int superSlot = -1;
     }
 
     abstract <R> R accept(Visitor<R> visitor);
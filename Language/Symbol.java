@@ -0,0 +1,37 @@
+package com.craftinginterpreters.language;
+
+// An interned name. There is only one Symbol for any name, so symbols hash to a precomputed value and compare by
+// identity, and a lookup by name never has to compare characters.
+class Symbol {
+    private static final SymbolTable table = new SymbolTable();
+    static final Symbol INIT = of("init");
+    static final Symbol THIS = of("this");
+    static final Symbol SUPER = of("super");
+
+    final String name;
+    private final int hash;
+
+    Symbol(String name, int hash) {
+        this.name = name;
+        this.hash = hash;
+    }
+
+    // Interns the name that runs from start to end in source, without building a string unless it's new.
+    static Symbol intern(CharSequence source, int start, int end) {
+        return table.intern(source, start, end);
+    }
+
+    static Symbol of(String name) {
+        return intern(name, 0, name.length());
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,75 @@
+package com.craftinginterpreters.language;
+
+// The table behind Symbol. Names are hashed and compared straight from the source, so a name that has been seen
+// before costs no new String or Symbol: every occurrence shares the first one's.
+//
+// Every thread scanning a script interns through the one table, so finding a name that is already there takes no
+// lock. Symbols are only ever added, and their fields are final, so a reader that misses one being added, or
+// probes the array a grow has just replaced, only falls through to the locked path, which looks again.
+class SymbolTable {
+    private volatile Symbol[] symbols = new Symbol[256];
+    private int count = 0;
+
+    Symbol intern(CharSequence source, int start, int end) {
+        // The same hash String.hashCode() computes.
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+
+        Symbol symbol = find(symbols, hash, source, start, end);
+        if (symbol != null) return symbol;
+        return add(hash, source, start, end);
+    }
+
+    private synchronized Symbol add(int hash, CharSequence source, int start, int end) {
+        Symbol[] table = symbols;
+        int mask = table.length - 1;
+        int index = spread(hash) & mask;
+        while (table[index] != null) {
+            Symbol symbol = table[index];
+            if (symbol.hashCode() == hash && matches(symbol.name, source, start, end)) return symbol;
+            index = (index + 1) & mask;
+        }
+
+        Symbol symbol = new Symbol(source.subSequence(start, end).toString(), hash);
+        table[index] = symbol;
+        if (++count * 2 > table.length) grow(table);
+        return symbol;
+    }
+
+    private static Symbol find(Symbol[] table, int hash, CharSequence source, int start, int end) {
+        int mask = table.length - 1;
+        int index = spread(hash) & mask;
+        Symbol symbol;
+        while ((symbol = table[index]) != null) {
+            if (symbol.hashCode() == hash && matches(symbol.name, source, start, end)) return symbol;
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    private static boolean matches(String name, CharSequence source, int start, int end) {
+        if (name.length() != end - start) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != source.charAt(start + i)) return false;
+        }
+        return true;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private void grow(Symbol[] old) {
+        Symbol[] grown = new Symbol[old.length * 2];
+        int mask = grown.length - 1;
+        for (Symbol symbol : old) {
+            if (symbol == null) continue;
+            int index = spread(symbol.hashCode()) & mask;
+            while (grown[index] != null) index = (index + 1) & mask;
+            grown[index] = symbol;
+        }
+        symbols = grown;
+    }
+}
@@ -0,0 +1,15 @@
+package com.craftinginterpreters.language;
+
+// What a call in tail position evaluates to: the call itself, still to be made by LanguageFunction.invoke after
+// the function returning it has given up its frame.
+class TailCall {
+    final LanguageFunction function;
+    final LanguageInstance receiver;
+    final Object[] arguments;
+
+    TailCall(LanguageFunction function, LanguageInstance receiver, Object[] arguments) {
+        this.function = function;
+        this.receiver = receiver;
+        this.arguments = arguments;
+    }
+}
@@ -5,15 +5,32 @@ class Token {
     final String lexeme;
     final Object literal;
     final int line;
+    // The interned name of an identifier, "this" or "super", which is what every lookup by name goes through.
+    final Symbol symbol;
 
     Token(TokenType type, String lexeme, Object literal, int line) {
         this.type = type;
         this.lexeme = lexeme;
         this.literal = literal;
         this.line = line;
+        this.symbol = type == TokenType.IDENTIFIER || type == TokenType.THIS || type == TokenType.SUPER
+                ? Symbol.of(lexeme) : null;
+    }
+
+    Token(TokenType type, Symbol symbol, int line) {
+        this.type = type;
+        this.lexeme = symbol.name;
+        this.literal = null;
+        this.line = line;
+        this.symbol = symbol;
+    }
+
+    // Number tokens are made without a lexeme, so their text is only built if an error has to quote it.
+    String text() {
+        return lexeme != null ? lexeme : Interpreter.stringify(literal);
     }
 
     public String toString() {
-        return type + " " + lexeme + " " + literal;
+        return type + " " + text() + " " + literal;
     }
 }
@@ -0,0 +1,12 @@
+package com.craftinginterpreters.language;
+
+// Thrown by the unboxed evaluation path when an expression turns out not to be a number, carrying the value it
+// did produce so the caller can fall back to the generic path without evaluating anything twice.
+class UnexpectedResult extends RuntimeException {
+    final Object value;
+
+    UnexpectedResult(Object value) {
+        super(null, null, false, false);
+        this.value = value;
+    }
+}
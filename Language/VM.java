@@ -0,0 +1,606 @@
+package com.craftinginterpreters.language;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Stack-based virtual machine that runs the bytecode produced by Compiler. Values share the tree-walker's
+// representation (Double, String, Boolean and null) so both engines print and compare the same way.
+class VM {
+    private static final int FRAMES_MAX = 16384;
+
+    static class Function {
+        final String name;
+        final Chunk chunk = new Chunk();
+        int arity = 0;
+        int upvalueCount = 0;
+
+        Function(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return "<fn " + name + ">";
+        }
+    }
+
+    static class Closure {
+        final Function function;
+        final Upvalue[] upvalues;
+
+        Closure(Function function) {
+            this.function = function;
+            this.upvalues = new Upvalue[function.upvalueCount];
+        }
+
+        @Override
+        public String toString() {
+            return function.toString();
+        }
+    }
+
+    // While open, an upvalue points at a live stack slot; once that slot is popped the value moves into the
+    // upvalue itself and slot becomes -1.
+    static class Upvalue {
+        int slot;
+        Object closed;
+        Upvalue next;
+
+        Upvalue(int slot) {
+            this.slot = slot;
+        }
+    }
+
+    static class Klass {
+        final String name;
+        final Map<Symbol, Closure> methods = new HashMap<>();
+
+        Klass(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    static class Instance {
+        final Klass klass;
+        final Map<Symbol, Object> fields = new HashMap<>();
+
+        Instance(Klass klass) {
+            this.klass = klass;
+        }
+
+        @Override
+        public String toString() {
+            return klass.name + " instance";
+        }
+    }
+
+    static class BoundMethod {
+        final Object receiver;
+        final Closure method;
+
+        BoundMethod(Object receiver, Closure method) {
+            this.receiver = receiver;
+            this.method = method;
+        }
+
+        @Override
+        public String toString() {
+            return method.toString();
+        }
+    }
+
+    private static class CallFrame {
+        Closure closure;
+        int ip;
+        // Stack index of slot zero, which holds the callee or the receiver.
+        int base;
+    }
+
+    // Thrown by helpers that don't know the current line; run() turns it into a RuntimeError.
+    private static class VMError extends RuntimeException {
+        VMError(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private Object[] stack = new Object[256];
+    private int sp = 0;
+    private CallFrame[] frames = new CallFrame[64];
+    private int frameCount = 0;
+    private Upvalue openUpvalues = null;
+    private final Map<Symbol, Object> globals = new HashMap<>();
+    private final Context context;
+
+    VM(Context context) {
+        this(context, NativeRegistry.builtins());
+    }
+
+    VM(Context context, NativeRegistry natives) {
+        this.context = context;
+        natives.defineAll(globals);
+    }
+
+    void interpret(Function script) {
+        Closure closure = new Closure(script);
+        push(closure);
+        try {
+            call(closure, 0);
+            run();
+        } catch (RuntimeError error) {
+            resetStack();
+            context.runtimeError(error);
+        }
+    }
+
+    private void run() {
+        CallFrame frame = frames[frameCount - 1];
+        byte[] code = frame.closure.function.chunk.code;
+        Object[] constants = frame.closure.function.chunk.constants();
+        int ip = frame.ip;
+
+        try {
+            for (;;) {
+                switch (code[ip++]) {
+                    case OpCode.CONSTANT:
+                        push(constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)]);
+                        ip += 2;
+                        break;
+                    case OpCode.NIL: push(null); break;
+                    case OpCode.TRUE: push(true); break;
+                    case OpCode.FALSE: push(false); break;
+                    case OpCode.POP: sp--; break;
+                    case OpCode.GET_LOCAL:
+                        push(stack[frame.base + (code[ip++] & 0xff)]);
+                        break;
+                    case OpCode.SET_LOCAL:
+                        stack[frame.base + (code[ip++] & 0xff)] = stack[sp - 1];
+                        break;
+                    case OpCode.GET_GLOBAL: {
+                        Symbol name = (Symbol)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        Object value = globals.get(name);
+                        if (value == null && !globals.containsKey(name)) {
+                            throw new VMError("Undefined variable '" + name + "'.");
+                        }
+                        push(value);
+                        break;
+                    }
+                    case OpCode.DEFINE_GLOBAL: {
+                        Symbol name = (Symbol)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        globals.put(name, stack[--sp]);
+                        break;
+                    }
+                    case OpCode.SET_GLOBAL: {
+                        Symbol name = (Symbol)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        if (!globals.containsKey(name)) {
+                            throw new VMError("Undefined variable '" + name + "'.");
+                        }
+                        globals.put(name, stack[sp - 1]);
+                        break;
+                    }
+                    case OpCode.GET_UPVALUE: {
+                        Upvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+                        push(upvalue.slot >= 0 ? stack[upvalue.slot] : upvalue.closed);
+                        break;
+                    }
+                    case OpCode.SET_UPVALUE: {
+                        Upvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+                        if (upvalue.slot >= 0) stack[upvalue.slot] = stack[sp - 1];
+                        else upvalue.closed = stack[sp - 1];
+                        break;
+                    }
+                    case OpCode.GET_PROPERTY: {
+                        Symbol name = (Symbol)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        if (!(stack[sp - 1] instanceof Instance)) {
+                            throw new VMError("Only instances have properties.");
+                        }
+                        Instance instance = (Instance)stack[sp - 1];
+                        Object value = instance.fields.get(name);
+                        if (value != null || instance.fields.containsKey(name)) {
+                            stack[sp - 1] = value;
+                        } else {
+                            stack[sp - 1] = bindMethod(instance.klass, name, instance);
+                        }
+                        break;
+                    }
+                    case OpCode.SET_PROPERTY: {
+                        Symbol name = (Symbol)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        if (!(stack[sp - 2] instanceof Instance)) {
+                            throw new VMError("Only instance have fields.");
+                        }
+                        Object value = stack[--sp];
+                        ((Instance)stack[sp - 1]).fields.put(name, value);
+                        stack[sp - 1] = value;
+                        break;
+                    }
+                    case OpCode.GET_SUPER: {
+                        Symbol name = (Symbol)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        Klass superclass = (Klass)stack[--sp];
+                        stack[sp - 1] = bindMethod(superclass, name, stack[sp - 1]);
+                        break;
+                    }
+                    case OpCode.EQUAL: {
+                        Object right = stack[--sp];
+                        stack[sp - 1] = Interpreter.isEqual(stack[sp - 1], right);
+                        break;
+                    }
+                    case OpCode.NOT_EQUAL: {
+                        Object right = stack[--sp];
+                        stack[sp - 1] = !Interpreter.isEqual(stack[sp - 1], right);
+                        break;
+                    }
+                    case OpCode.GREATER: {
+                        Object right = stack[--sp];
+                        Object left = stack[sp - 1];
+                        stack[sp - 1] = left instanceof Double && right instanceof Double
+                                ? (double)left > (double)right : compare(left, right) > 0;
+                        break;
+                    }
+                    case OpCode.GREATER_EQUAL: {
+                        Object right = stack[--sp];
+                        Object left = stack[sp - 1];
+                        stack[sp - 1] = left instanceof Double && right instanceof Double
+                                ? (double)left >= (double)right : compare(left, right) >= 0;
+                        break;
+                    }
+                    case OpCode.LESS: {
+                        Object right = stack[--sp];
+                        Object left = stack[sp - 1];
+                        stack[sp - 1] = left instanceof Double && right instanceof Double
+                                ? (double)left < (double)right : compare(left, right) < 0;
+                        break;
+                    }
+                    case OpCode.LESS_EQUAL: {
+                        Object right = stack[--sp];
+                        Object left = stack[sp - 1];
+                        stack[sp - 1] = left instanceof Double && right instanceof Double
+                                ? (double)left <= (double)right : compare(left, right) <= 0;
+                        break;
+                    }
+                    case OpCode.ADD: {
+                        Object right = stack[--sp];
+                        stack[sp - 1] = add(stack[sp - 1], right);
+                        break;
+                    }
+                    case OpCode.SUBTRACT: {
+                        Object right = stack[--sp];
+                        Object left = stack[sp - 1];
+                        checkNumberOperands(left, right);
+                        stack[sp - 1] = (double)left - (double)right;
+                        break;
+                    }
+                    case OpCode.MULTIPLY: {
+                        Object right = stack[--sp];
+                        Object left = stack[sp - 1];
+                        checkNumberOperands(left, right);
+                        stack[sp - 1] = (double)left * (double)right;
+                        break;
+                    }
+                    case OpCode.DIVIDE: {
+                        Object right = stack[--sp];
+                        Object left = stack[sp - 1];
+                        checkNumberOperands(left, right);
+                        if ((double)right == 0) throw new VMError("Cannot divide by zero.");
+                        stack[sp - 1] = (double)left / (double)right;
+                        break;
+                    }
+                    case OpCode.NOT:
+                        stack[sp - 1] = !Interpreter.isTruthy(stack[sp - 1]);
+                        break;
+                    case OpCode.NEGATE:
+                        if (!(stack[sp - 1] instanceof Double)) throw new VMError("Operand must be a number.");
+                        stack[sp - 1] = -(double)stack[sp - 1];
+                        break;
+                    case OpCode.TERNARY: {
+                        Object altResult = stack[--sp];
+                        Object result = stack[--sp];
+                        stack[sp - 1] = Interpreter.isTruthy(stack[sp - 1]) ? result : altResult;
+                        break;
+                    }
+                    case OpCode.PRINT:
+                        context.out.println(Interpreter.stringify(stack[--sp]));
+                        break;
+                    case OpCode.JUMP:
+                        ip += ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                        ip += 2;
+                        break;
+                    case OpCode.JUMP_IF_FALSE: {
+                        int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                        ip += 2;
+                        if (!Interpreter.isTruthy(stack[sp - 1])) ip += offset;
+                        break;
+                    }
+                    case OpCode.LOOP: {
+                        int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                        ip += 2;
+                        ip -= offset;
+                        break;
+                    }
+                    case OpCode.CALL: {
+                        int argCount = code[ip++] & 0xff;
+                        frame.ip = ip;
+                        int callerCount = frameCount;
+                        callValue(stack[sp - argCount - 1], argCount);
+                        if (frameCount > callerCount && code[ip] == OpCode.RETURN) replaceCaller();
+                        frame = frames[frameCount - 1];
+                        code = frame.closure.function.chunk.code;
+                        constants = frame.closure.function.chunk.constants();
+                        ip = frame.ip;
+                        break;
+                    }
+                    case OpCode.INVOKE: {
+                        Symbol name = (Symbol)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        int argCount = code[ip + 2] & 0xff;
+                        ip += 3;
+                        frame.ip = ip;
+                        int callerCount = frameCount;
+                        invoke(name, argCount);
+                        if (frameCount > callerCount && code[ip] == OpCode.RETURN) replaceCaller();
+                        frame = frames[frameCount - 1];
+                        code = frame.closure.function.chunk.code;
+                        constants = frame.closure.function.chunk.constants();
+                        ip = frame.ip;
+                        break;
+                    }
+                    case OpCode.SUPER_INVOKE: {
+                        Symbol name = (Symbol)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        int argCount = code[ip + 2] & 0xff;
+                        ip += 3;
+                        frame.ip = ip;
+                        Klass superclass = (Klass)stack[--sp];
+                        int callerCount = frameCount;
+                        invokeFromClass(superclass, name, argCount);
+                        if (frameCount > callerCount && code[ip] == OpCode.RETURN) replaceCaller();
+                        frame = frames[frameCount - 1];
+                        code = frame.closure.function.chunk.code;
+                        constants = frame.closure.function.chunk.constants();
+                        ip = frame.ip;
+                        break;
+                    }
+                    case OpCode.CLOSURE: {
+                        Function function = (Function)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        Closure closure = new Closure(function);
+                        for (int i = 0; i < closure.upvalues.length; i++) {
+                            boolean isLocal = code[ip++] == 1;
+                            int index = code[ip++] & 0xff;
+                            closure.upvalues[i] = isLocal ? captureUpvalue(frame.base + index)
+                                    : frame.closure.upvalues[index];
+                        }
+                        push(closure);
+                        break;
+                    }
+                    case OpCode.CLOSE_UPVALUE:
+                        closeUpvalues(sp - 1);
+                        sp--;
+                        break;
+                    case OpCode.RETURN: {
+                        Object result = stack[--sp];
+                        closeUpvalues(frame.base);
+                        frameCount--;
+                        if (frameCount == 0) {
+                            sp = 0;
+                            return;
+                        }
+
+                        Arrays.fill(stack, frame.base, sp, null);
+                        sp = frame.base;
+                        push(result);
+                        frame = frames[frameCount - 1];
+                        code = frame.closure.function.chunk.code;
+                        constants = frame.closure.function.chunk.constants();
+                        ip = frame.ip;
+                        break;
+                    }
+                    case OpCode.CLASS: {
+                        Symbol name = (Symbol)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        push(new Klass(name.name));
+                        break;
+                    }
+                    case OpCode.INHERIT: {
+                        if (!(stack[sp - 2] instanceof Klass)) throw new VMError("Superclass must be a class.");
+                        Klass subclass = (Klass)stack[--sp];
+                        // Classes never change after creation, so copying the methods down resolves inheritance once.
+                        subclass.methods.putAll(((Klass)stack[sp - 1]).methods);
+                        break;
+                    }
+                    case OpCode.METHOD: {
+                        Symbol name = (Symbol)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        Closure method = (Closure)stack[--sp];
+                        ((Klass)stack[sp - 1]).methods.put(name, method);
+                        break;
+                    }
+                }
+            }
+        } catch (VMError error) {
+            throw new RuntimeError(new Token(TokenType.EOF, "", null, frame.closure.function.chunk.getLine(ip - 1)),
+                    error.getMessage());
+        }
+    }
+
+    private void callValue(Object callee, int argCount) {
+        if (callee instanceof Closure) {
+            call((Closure)callee, argCount);
+        } else if (callee instanceof BoundMethod) {
+            BoundMethod bound = (BoundMethod)callee;
+            stack[sp - argCount - 1] = bound.receiver;
+            call(bound.method, argCount);
+        } else if (callee instanceof Klass) {
+            Klass klass = (Klass)callee;
+            stack[sp - argCount - 1] = new Instance(klass);
+            Closure initializer = klass.methods.get(Symbol.INIT);
+            if (initializer != null) {
+                call(initializer, argCount);
+            } else if (argCount != 0) {
+                throw new VMError("Expected 0 arguments but got " + argCount + ".");
+            }
+        } else if (callee instanceof NativeFunction) {
+            NativeFunction function = (NativeFunction)callee;
+            checkArity(function.arity(), argCount);
+            Object result = callNative(function, argCount);
+            sp -= argCount + 1;
+            push(result);
+        } else {
+            throw new VMError("Can only call functions and classes.");
+        }
+    }
+
+    // The arguments are still on the stack, and natives of up to two parameters take them from there directly.
+    private Object callNative(NativeFunction function, int argCount) {
+        try {
+            switch (argCount) {
+                case 0: return function.call0();
+                case 1: return function.call1(stack[sp - 1]);
+                case 2: return function.call2(stack[sp - 2], stack[sp - 1]);
+                default: return function.callN(Arrays.copyOfRange(stack, sp - argCount, sp));
+            }
+        } catch (LoxException error) {
+            throw new VMError(error.getMessage());
+        }
+    }
+
+    private void call(Closure closure, int argCount) {
+        checkArity(closure.function.arity, argCount);
+        if (frameCount == FRAMES_MAX) throw new VMError("Stack overflow.");
+        if (frameCount == frames.length) frames = Arrays.copyOf(frames, frameCount * 2);
+
+        CallFrame frame = frames[frameCount];
+        if (frame == null) frame = frames[frameCount] = new CallFrame();
+        frameCount++;
+        frame.closure = closure;
+        frame.ip = 0;
+        frame.base = sp - argCount - 1;
+    }
+
+    // A call followed directly by a return is in tail position: the caller has nothing left to do, so the callee
+    // takes over its frame and a chain of tail calls runs without running out of frames.
+    private void replaceCaller() {
+        CallFrame callee = frames[frameCount - 1];
+        CallFrame caller = frames[frameCount - 2];
+        closeUpvalues(caller.base);
+
+        int size = sp - callee.base;
+        System.arraycopy(stack, callee.base, stack, caller.base, size);
+        Arrays.fill(stack, caller.base + size, sp, null);
+        sp = caller.base + size;
+
+        caller.closure = callee.closure;
+        caller.ip = 0;
+        frameCount--;
+    }
+
+    private void checkArity(int arity, int argCount) {
+        if (argCount != arity) {
+            throw new VMError("Expected " + arity + " arguments but got " + argCount + ".");
+        }
+    }
+
+    private void invoke(Symbol name, int argCount) {
+        Object receiver = stack[sp - argCount - 1];
+        if (!(receiver instanceof Instance)) throw new VMError("Only instances have properties.");
+
+        Instance instance = (Instance)receiver;
+        Object field = instance.fields.get(name);
+        if (field != null || instance.fields.containsKey(name)) {
+            stack[sp - argCount - 1] = field;
+            callValue(field, argCount);
+            return;
+        }
+        invokeFromClass(instance.klass, name, argCount);
+    }
+
+    private void invokeFromClass(Klass klass, Symbol name, int argCount) {
+        Closure method = klass.methods.get(name);
+        if (method == null) throw new VMError("Undefined property '" + name + "'.");
+        call(method, argCount);
+    }
+
+    private BoundMethod bindMethod(Klass klass, Symbol name, Object receiver) {
+        Closure method = klass.methods.get(name);
+        if (method == null) throw new VMError("Undefined property '" + name + "'.");
+        return new BoundMethod(receiver, method);
+    }
+
+    private Upvalue captureUpvalue(int slot) {
+        Upvalue previous = null;
+        Upvalue upvalue = openUpvalues;
+        while (upvalue != null && upvalue.slot > slot) {
+            previous = upvalue;
+            upvalue = upvalue.next;
+        }
+        if (upvalue != null && upvalue.slot == slot) return upvalue;
+
+        Upvalue created = new Upvalue(slot);
+        created.next = upvalue;
+        if (previous == null) openUpvalues = created;
+        else previous.next = created;
+        return created;
+    }
+
+    private void closeUpvalues(int last) {
+        while (openUpvalues != null && openUpvalues.slot >= last) {
+            Upvalue upvalue = openUpvalues;
+            upvalue.closed = stack[upvalue.slot];
+            upvalue.slot = -1;
+            openUpvalues = upvalue.next;
+        }
+    }
+
+    // Same ordering rules as the tree-walker for anything that isn't two numbers: strings compare lexicographically,
+    // and a string against a number uses the number's Double.toString form.
+    private int compare(Object left, Object right) {
+        if (left instanceof String && right instanceof String) {
+            return ((String)left).compareTo((String)right);
+        }
+        if (left instanceof String && right instanceof Double) {
+            return ((String)left).compareTo(Double.toString((double)right));
+        }
+        if (left instanceof Double && right instanceof String) {
+            return Double.toString((double)left).compareTo((String)right);
+        }
+        throw new VMError("Operands must be numbers or strings.");
+    }
+
+    private Object add(Object left, Object right) {
+        if (left instanceof Double && right instanceof Double) {
+            return (double)left + (double)right;
+        }
+        if (left instanceof String) {
+            return (String)left + (right instanceof String ? (String)right : String.valueOf(right));
+        }
+        if (right instanceof String) {
+            return String.valueOf(left) + (String)right;
+        }
+        throw new VMError("Operands must be two numbers or two strings.");
+    }
+
+    private void checkNumberOperands(Object left, Object right) {
+        if (left instanceof Double && right instanceof Double) return;
+        throw new VMError("Operands must be number.");
+    }
+
+    private void push(Object value) {
+        if (sp == stack.length) stack = Arrays.copyOf(stack, sp * 2);
+        stack[sp++] = value;
+    }
+
+    private void resetStack() {
+        Arrays.fill(stack, 0, sp, null);
+        sp = 0;
+        frameCount = 0;
+        openUpvalues = null;
+    }
+}
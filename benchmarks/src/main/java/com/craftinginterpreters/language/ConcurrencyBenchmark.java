@@ -0,0 +1,82 @@
+package com.craftinginterpreters.language;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Parses, resolves and runs a different workload on each thread at the same time, each in a Context of its own,
+// and checks every run printed exactly what the workload printed when it ran alone. Anything the contexts still
+// share turns up here as a wrong answer or an error rather than only as lost throughput. Use -t to change the
+// number of threads.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(8)
+@State(Scope.Benchmark)
+public class ConcurrencyBenchmark {
+    private static final InterpreterBenchmark.Workload[] WORKLOADS = InterpreterBenchmark.Workload.values();
+
+    private final String[] sources = new String[WORKLOADS.length];
+    private final String[] expected = new String[WORKLOADS.length];
+    private final AtomicInteger threads = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class Runner {
+        int workload;
+
+        // Threads take the workloads in turn, so neighbouring threads are always running different scripts.
+        @Setup(Level.Trial)
+        public void pick(ConcurrencyBenchmark benchmark) {
+            workload = benchmark.threads.getAndIncrement() % WORKLOADS.length;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void load() {
+        for (int i = 0; i < WORKLOADS.length; i++) {
+            InterpreterBenchmark.Workload workload = WORKLOADS[i];
+            int n = workload.sizes[InterpreterBenchmark.Size.SMALL.ordinal()];
+            sources[i] = "var N = " + n + ";\n" + Workloads.read(workload.script);
+            expected[i] = run(sources[i]);
+        }
+    }
+
+    @Benchmark
+    public String run(Runner runner) {
+        String output = run(sources[runner.workload]);
+        if (!output.equals(expected[runner.workload])) {
+            throw new IllegalStateException(WORKLOADS[runner.workload] + " printed something else when run " +
+                    "alongside other scripts.");
+        }
+        return output;
+    }
+
+    private static String run(String source) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        Context context = new Context(new PrintStream(out, true, StandardCharsets.UTF_8),
+                new PrintStream(err, true, StandardCharsets.UTF_8));
+        Interpreter interpreter = new Interpreter(context);
+        interpreter.interpret(Workloads.compile(source, interpreter));
+        if (context.hadRuntimeError || err.size() > 0) {
+            throw new IllegalStateException("The workload failed: " + err.toString(StandardCharsets.UTF_8));
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,98 @@
+package com.craftinginterpreters.language;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Scans, parses and resolves programs from SourceGenerator, each step on its own. Alongside operations a second,
+// the tokens and nodes counters give tokens and nodes a second. With -prof gc, gc.alloc.rate.norm divided by
+// length is the number of bytes allocated for each character of source.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class FrontEndBenchmark {
+    private static final long SEED = 42;
+
+    @Param
+    public SourceGenerator.Shape shape;
+    @Param({"100000", "1000000"})
+    public int length;
+
+    private String source;
+    private int tokens;
+    private int nodes;
+    private List<Stmt> tree;
+    private Interpreter interpreter;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counts {
+        public long tokens;
+        public long nodes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            tokens = 0;
+            nodes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void generate() {
+        source = SourceGenerator.generate(shape, length, SEED);
+        tokens = countTokens(source);
+
+        Context context = new Context();
+        interpreter = new Interpreter(context);
+        tree = new Parser(new Scanner(source, context), context).parse();
+        if (!context.hadError) new Resolver(interpreter).resolve(tree);
+        if (context.hadError) throw new IllegalStateException("The generated program doesn't compile.");
+        nodes = NodeCounter.count(tree);
+    }
+
+    private static int countTokens(String source) {
+        Scanner scanner = new Scanner(source, new Context());
+        int count = 0;
+        while (scanner.nextToken().type != TokenType.EOF) count++;
+        return count;
+    }
+
+    @Benchmark
+    public int scan(Counts counts) {
+        int count = countTokens(source);
+        counts.tokens += count;
+        return count;
+    }
+
+    // The Parser pulls tokens from the Scanner as it needs them, so this scans as well.
+    @Benchmark
+    public Object parse(Counts counts) {
+        Context context = new Context();
+        List<Stmt> statements = new Parser(new Scanner(source, context), context).parse();
+        counts.tokens += tokens;
+        counts.nodes += nodes;
+        return statements;
+    }
+
+    // Resolving the same tree again stores the same slots and distances on it, so one tree does for every run.
+    @Benchmark
+    public void resolve(Counts counts) {
+        new Resolver(interpreter).resolve(tree);
+        counts.nodes += nodes;
+    }
+}
@@ -0,0 +1,83 @@
+package com.craftinginterpreters.language;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Runs each workload start to finish on the tree-walking Interpreter. Every workload reads its input size from a
+// global N, which is defined ahead of the script.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class InterpreterBenchmark {
+    public enum Workload {
+        FIB("fib", 20, 24, 28),
+        BINARY_TREES("binary_trees", 8, 10, 12),
+        METHOD_CALL("method_call", 5000, 50000, 500000),
+        PROPERTIES("properties", 5000, 50000, 500000),
+        INSTANTIATION("instantiation", 5000, 50000, 500000),
+        STRING_EQUALITY("string_equality", 5000, 50000, 500000),
+        CLOSURES("closures", 5000, 50000, 500000),
+        NATIVE_CALLS("native_calls", 5000, 50000, 500000),
+        ZOO("zoo", 5000, 50000, 500000);
+
+        final String script;
+        // N for each Size, in order.
+        final int[] sizes;
+
+        Workload(String script, int... sizes) {
+            this.script = script;
+            this.sizes = sizes;
+        }
+    }
+
+    public enum Size {
+        SMALL, MEDIUM, LARGE
+    }
+
+    @Param
+    public Workload workload;
+    @Param
+    public Size size;
+
+    private String source;
+    // What the scripts print would only get in the way of JMH's own output.
+    private final PrintStream quiet = new PrintStream(OutputStream.nullOutputStream());
+    private Interpreter interpreter;
+    private List<Stmt> statements;
+
+    @Setup(Level.Trial)
+    public void load() {
+        source = "var N = " + workload.sizes[size.ordinal()] + ";\n" + Workloads.read(workload.script);
+    }
+
+    // Every run gets a new interpreter and a new tree, so nothing one run specialized or cached is left for the
+    // next. Each run takes long enough for the setup not to disturb the measurement.
+    @Setup(Level.Invocation)
+    public void prepare() {
+        interpreter = new Interpreter(new Context(quiet, System.err));
+        statements = Workloads.compile(source, interpreter);
+    }
+
+    @Benchmark
+    public void run() {
+        interpreter.interpret(statements);
+        if (interpreter.context.hadRuntimeError) throw new IllegalStateException("The workload failed at runtime.");
+    }
+}
@@ -0,0 +1,425 @@
+package com.craftinginterpreters.language;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+// Writes Lox programs for the front-end benchmarks, adding top-level declarations of the chosen shape until the
+// program is at least the given number of characters long. The same shape, length and seed always give the same
+// program, and every program scans, parses and resolves without an error or a warning. Programs are only meant to
+// be read, not run.
+public class SourceGenerator {
+    public enum Shape {
+        // A bit of everything: functions, classes, loops, globals and the odd comment.
+        MIXED,
+        // Functions whose bodies nest ifs, loops, blocks and closures many levels deep.
+        DEEP_NESTING,
+        // Class hierarchies with fields, initializers and methods that call up through super.
+        MANY_CLASSES,
+        // Declarations whose initializers are long, heavily parenthesized expressions.
+        LONG_EXPRESSIONS,
+        // Code with line and block comments between statements, and long string literals.
+        COMMENTS_AND_STRINGS
+    }
+
+    // None of these have a 'z' in them, which the Scanner doesn't take in an identifier.
+    private static final String[] WORDS = {
+            "alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel", "india", "juliet", "kilo",
+            "lima", "mike", "november", "oscar", "papa", "quebec", "romeo", "sierra", "tango", "uniform", "victor",
+            "whiskey", "xray", "yankee"
+    };
+    private static final String[] ARITHMETIC = {"+", "-", "*", "/"};
+    private static final String[] COMPARISON = {"<", "<=", ">", ">=", "==", "!="};
+    private static final int METHOD_NAMES = 8;
+
+    private final Shape shape;
+    private final Random random;
+    private final StringBuilder out = new StringBuilder();
+    private int indent = 0;
+    private int nextName = 0;
+    // Every variable in scope where the generator is writing, innermost last. Locals are added to unused when
+    // they're declared and taken out when something refers to them, and any left over when their scope closes
+    // are printed so the Resolver has nothing to warn about.
+    private final List<String> visible = new ArrayList<>();
+    private final Set<String> unused = new HashSet<>();
+    private int scopeDepth = 0;
+    private int loops = 0;
+    private List<String> fields = null;
+    private final List<String> classes = new ArrayList<>();
+    private final Map<String, List<String>> methods = new HashMap<>();
+
+    private SourceGenerator(Shape shape, long seed) {
+        this.shape = shape;
+        this.random = new Random(seed);
+    }
+
+    public static String generate(Shape shape, int length, long seed) {
+        SourceGenerator generator = new SourceGenerator(shape, seed);
+        while (generator.out.length() < length) {
+            generator.declaration();
+        }
+        return generator.out.toString();
+    }
+
+    private void declaration() {
+        switch (shape) {
+            case MIXED:
+                switch (random.nextInt(6)) {
+                    case 0: function(name("f"), 3); break;
+                    case 1: classDeclaration(); break;
+                    case 2: comment(); break;
+                    case 3: variable(2); break;
+                    default: statement(3); break;
+                }
+                break;
+            case DEEP_NESTING:
+                function(name("f"), 0);
+                break;
+            case MANY_CLASSES:
+                classDeclaration();
+                break;
+            case LONG_EXPRESSIONS:
+                variable(8 + random.nextInt(4));
+                line("print " + expression(6) + ";");
+                break;
+            case COMMENTS_AND_STRINGS:
+                comment();
+                if (random.nextBoolean()) function(name("f"), 2);
+                else variable(1);
+                break;
+        }
+    }
+
+    private void statements(int depth, int count) {
+        for (int i = 0; i < count; i++) {
+            statement(depth);
+        }
+    }
+
+    private void statement(int depth) {
+        if (shape == Shape.COMMENTS_AND_STRINGS && random.nextBoolean()) comment();
+        if (shape == Shape.MIXED && random.nextInt(12) == 0) comment();
+        if (depth <= 0 || random.nextInt(3) > 0) {
+            simpleStatement();
+            return;
+        }
+        compound(() -> statements(depth - 1, 1 + random.nextInt(3)));
+    }
+
+    // A chain of compound statements depth levels deep, each holding a simple statement and the next level.
+    private void nest(int depth) {
+        simpleStatement();
+        if (depth > 0) compound(() -> nest(depth - 1));
+    }
+
+    private void simpleStatement() {
+        switch (random.nextInt(loops > 0 ? 6 : 5)) {
+            case 0:
+                variable(2);
+                break;
+            case 1:
+                line("print " + expression(2) + ";");
+                break;
+            case 2:
+                if (scopeDepth > 0 && visible.size() > 0) {
+                    line(variableName() + " = " + expression(2) + ";");
+                } else {
+                    line("print " + expression(1) + ";");
+                }
+                break;
+            case 3:
+                line(call() + ";");
+                break;
+            case 4:
+                if (fields != null) line("this." + pick(fields) + " = " + expression(2) + ";");
+                else variable(1);
+                break;
+            default:
+                line("if (" + expression(1) + ") break;");
+                break;
+        }
+    }
+
+    private void compound(Runnable body) {
+        switch (random.nextInt(5)) {
+            case 0:
+                line("if (" + expression(2) + ") {");
+                scope(body);
+                if (random.nextBoolean()) {
+                    line("} else {");
+                    scope(this::simpleStatement);
+                }
+                line("}");
+                break;
+            case 1:
+                line("while (" + expression(2) + ") {");
+                loops++;
+                scope(body);
+                loops--;
+                line("}");
+                break;
+            case 2: {
+                String counter = name("i");
+                scopeDepth++;
+                visible.add(counter);
+                line("for (var " + counter + " = 0; " + counter + " < " + expression(1) + "; " +
+                        counter + " = " + counter + " + 1) {");
+                loops++;
+                scope(body);
+                loops--;
+                visible.remove(visible.size() - 1);
+                scopeDepth--;
+                line("}");
+                break;
+            }
+            case 3:
+                line("{");
+                scope(body);
+                line("}");
+                break;
+            default: {
+                // A closure, called straight away so that its name is used.
+                String name = name("f");
+                function(name, body);
+                line("print " + name + "(" + arguments(2) + ");");
+                break;
+            }
+        }
+    }
+
+    private void scope(Runnable body) {
+        indent++;
+        scopeDepth++;
+        int mark = visible.size();
+        body.run();
+        useRemaining(mark);
+        forget(mark);
+        scopeDepth--;
+        indent--;
+    }
+
+    private void function(String name, int depth) {
+        if (shape == Shape.DEEP_NESTING) {
+            function(name, () -> nest(12 + random.nextInt(12)));
+        } else {
+            function(name, () -> statements(depth, 2 + random.nextInt(4)));
+        }
+    }
+
+    private void function(String name, Runnable body) {
+        declare(name);
+        int savedLoops = loops;
+        List<String> savedFields = fields;
+        loops = 0;
+        fields = null;
+        functionBody("fun " + name, 2, body, true);
+        loops = savedLoops;
+        fields = savedFields;
+    }
+
+    // Writes a function or method with the given number of parameters, ending in a return when asked for one.
+    private void functionBody(String header, int arity, Runnable body, boolean returns) {
+        List<String> params = new ArrayList<>();
+        for (int i = 0; i < arity; i++) {
+            params.add(name("p"));
+        }
+        line(header + "(" + String.join(", ", params) + ") {");
+        indent++;
+        scopeDepth++;
+        int mark = visible.size();
+        for (String param : params) {
+            declare(param);
+        }
+
+        body.run();
+        useRemaining(mark);
+        if (returns) line("return " + expression(2) + ";");
+        forget(mark);
+        scopeDepth--;
+        indent--;
+        line("}");
+    }
+
+    private void classDeclaration() {
+        String name = name("C");
+        String superclass = classes.isEmpty() || random.nextInt(3) == 0 ? null : pick(classes);
+        declare(name);
+        line("class " + name + (superclass == null ? "" : " < " + superclass) + " {");
+        indent++;
+
+        List<String> savedFields = fields;
+        fields = new ArrayList<>();
+        for (int i = 1 + random.nextInt(4); i > 0; i--) {
+            fields.add(pick(WORDS) + i);
+        }
+        functionBody("init", 2, () -> {
+            if (superclass != null) line("super.init(" + arguments(2) + ");");
+            for (String field : fields) {
+                line("this." + field + " = " + expression(1) + ";");
+            }
+        }, false);
+
+        List<String> names = new ArrayList<>();
+        for (int i = 1 + random.nextInt(4); i > 0; i--) {
+            String method = "m" + random.nextInt(METHOD_NAMES);
+            if (names.contains(method)) continue;
+            names.add(method);
+            functionBody(method, 1 + random.nextInt(2), () -> {
+                if (superclass != null && random.nextBoolean()) {
+                    line("print super." + pick(methods.get(superclass)) + "(" + arguments(2) + ");");
+                }
+                statements(2, 1 + random.nextInt(3));
+            }, true);
+        }
+        fields = savedFields;
+        indent--;
+        line("}");
+
+        classes.add(name);
+        methods.put(name, names);
+        String instance = name("o");
+        line("var " + instance + " = " + name + "(" + arguments(2) + ");");
+        declare(instance);
+        line("print " + instance + "." + pick(names) + "(" + arguments(1) + ");");
+    }
+
+    private void variable(int depth) {
+        String name = name("v");
+        line("var " + name + " = " + expression(depth) + ";");
+        declare(name);
+    }
+
+    private void comment() {
+        switch (random.nextInt(3)) {
+            case 0:
+                for (int i = 1 + random.nextInt(3); i > 0; i--) {
+                    line("// " + words(4 + random.nextInt(10)));
+                }
+                break;
+            case 1:
+                line("/* " + words(3 + random.nextInt(6)));
+                for (int i = random.nextInt(4); i > 0; i--) {
+                    line("   " + words(4 + random.nextInt(10)));
+                }
+                line("*/");
+                break;
+            default:
+                line("/** " + words(3 + random.nextInt(6)) + " **/");
+                break;
+        }
+    }
+
+    private String expression(int depth) {
+        if (depth <= 0 || random.nextInt(4) == 0) return operand();
+        switch (random.nextInt(8)) {
+            case 0:
+                return "(" + expression(depth - 1) + ")";
+            case 1:
+            case 2:
+                return expression(depth - 1) + " " + pick(ARITHMETIC) + " " + expression(depth - 1);
+            case 3:
+                return expression(depth - 1) + " " + pick(COMPARISON) + " " + expression(depth - 1);
+            case 4:
+                return expression(depth - 1) + (random.nextBoolean() ? " and " : " or ") + expression(depth - 1);
+            case 5:
+                return "!(" + expression(depth - 1) + ")";
+            case 6:
+                return "((" + expression(depth - 1) + ") ? (" + expression(depth - 1) + ") : (" +
+                        expression(depth - 1) + "))";
+            default:
+                return call();
+        }
+    }
+
+    private String operand() {
+        switch (random.nextInt(6)) {
+            case 0:
+                return random.nextBoolean() ? Integer.toString(random.nextInt(1000))
+                        : random.nextInt(100) + "." + random.nextInt(100);
+            case 1:
+                return string();
+            case 2:
+                return random.nextBoolean() ? "true" : random.nextBoolean() ? "false" : "nil";
+            case 3:
+                if (fields != null) return "this." + pick(fields);
+                // Falls through to a variable.
+            default:
+                return visible.isEmpty() ? "nil" : variableName();
+        }
+    }
+
+    private String call() {
+        if (visible.isEmpty()) return "clock()";
+        return variableName() + "(" + arguments(1) + ")";
+    }
+
+    private String arguments(int count) {
+        List<String> arguments = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            arguments.add(expression(1));
+        }
+        return String.join(", ", arguments);
+    }
+
+    private String string() {
+        int count = shape == Shape.COMMENTS_AND_STRINGS ? 3 + random.nextInt(20) : 1 + random.nextInt(3);
+        return "\"" + words(count) + "\"";
+    }
+
+    private String words(int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) text.append(' ');
+            text.append(pick(WORDS));
+        }
+        return text.toString();
+    }
+
+    // Usually one of the innermost few variables, so that locals are used more often than the growing pile of
+    // globals.
+    private String variableName() {
+        int index = random.nextBoolean() ? visible.size() - 1 - random.nextInt(Math.min(8, visible.size()))
+                : random.nextInt(visible.size());
+        String name = visible.get(index);
+        unused.remove(name);
+        return name;
+    }
+
+    private void declare(String name) {
+        visible.add(name);
+        if (scopeDepth > 0) unused.add(name);
+    }
+
+    private void useRemaining(int mark) {
+        for (String name : visible.subList(mark, visible.size())) {
+            if (unused.remove(name)) line("print " + name + ";");
+        }
+    }
+
+    private void forget(int mark) {
+        visible.subList(mark, visible.size()).clear();
+    }
+
+    private String name(String prefix) {
+        return prefix + nextName++;
+    }
+
+    private String pick(String[] choices) {
+        return choices[random.nextInt(choices.length)];
+    }
+
+    private String pick(List<String> choices) {
+        return choices.get(random.nextInt(choices.size()));
+    }
+
+    private void line(String text) {
+        for (int i = 0; i < indent; i++) {
+            out.append("  ");
+        }
+        out.append(text).append('\n');
+    }
+}
@@ -0,0 +1,29 @@
+package com.craftinginterpreters.language;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// The Lox programs the benchmarks run, kept as resources under workloads/, and the steps Language.run takes to
+// get one ready for the Interpreter.
+class Workloads {
+    static String read(String name) {
+        try (InputStream in = Workloads.class.getResourceAsStream("/workloads/" + name + ".lox")) {
+            if (in == null) throw new IllegalArgumentException("No workload named '" + name + "'.");
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    // Parses, resolves and optimizes the source for the given interpreter to run.
+    static List<Stmt> compile(CharSequence source, Interpreter interpreter) {
+        Context context = interpreter.context;
+        List<Stmt> statements = new Parser(new Scanner(source, context), context).parse();
+        if (!context.hadError) new Resolver(interpreter).resolve(statements);
+        if (context.hadError) throw new IllegalStateException("The workload doesn't compile.");
+        return new Optimizer().optimize(statements);
+    }
+}
@@ -0,0 +1,158 @@
+package com.craftinginterpreters.language;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+// Runs the benchmark workloads on many threads at once, each in a Context of its own, and checks every run
+// printed exactly what the workload printed when it ran alone, on both engines.
+class ContextIsolationTest {
+    private static final int THREADS = 8;
+    private static final int RUNS = 64;
+    private static final InterpreterBenchmark.Workload[] WORKLOADS = InterpreterBenchmark.Workload.values();
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void start() {
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    private static class Run {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final Context context = new Context(new PrintStream(out, true, StandardCharsets.UTF_8),
+                new PrintStream(err, true, StandardCharsets.UTF_8));
+
+        String out() {
+            return out.toString(StandardCharsets.UTF_8);
+        }
+
+        String err() {
+            return err.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String source(InterpreterBenchmark.Workload workload) {
+        int n = workload.sizes[InterpreterBenchmark.Size.SMALL.ordinal()];
+        return "var N = " + n + ";\n" + Workloads.read(workload.script);
+    }
+
+    private static Run interpret(String source) {
+        Run run = new Run();
+        Interpreter interpreter = new Interpreter(run.context);
+        interpreter.interpret(Workloads.compile(source, interpreter));
+        return run;
+    }
+
+    private static Run runOnVM(String source) {
+        Run run = new Run();
+        List<Stmt> statements = Workloads.compile(source, new Interpreter(run.context));
+        new VM(run.context).interpret(new Compiler(run.context).compile(statements));
+        return run;
+    }
+
+    @Test
+    void interpreterRunsDontSeeEachOther() throws Exception {
+        checkIsolated(ContextIsolationTest::interpret);
+    }
+
+    @Test
+    void vmRunsDontSeeEachOther() throws Exception {
+        checkIsolated(ContextIsolationTest::runOnVM);
+    }
+
+    private void checkIsolated(Function<String, Run> engine) throws Exception {
+        String[] sources = new String[WORKLOADS.length];
+        String[] expected = new String[WORKLOADS.length];
+        for (int i = 0; i < WORKLOADS.length; i++) {
+            sources[i] = source(WORKLOADS[i]);
+            Run alone = engine.apply(sources[i]);
+            assertEquals("", alone.err(), WORKLOADS[i] + " reported errors on its own.");
+            expected[i] = alone.out();
+        }
+
+        List<Future<Run>> runs = new ArrayList<>();
+        for (int i = 0; i < RUNS; i++) {
+            String source = sources[i % sources.length];
+            runs.add(executor.submit(() -> engine.apply(source)));
+        }
+        for (int i = 0; i < RUNS; i++) {
+            Run run = runs.get(i).get();
+            InterpreterBenchmark.Workload workload = WORKLOADS[i % WORKLOADS.length];
+            assertEquals("", run.err(), workload + " reported errors alongside other scripts.");
+            assertEquals(expected[i % expected.length], run.out(), workload + " printed something else alongside " +
+                    "other scripts.");
+        }
+    }
+
+    @Test
+    void errorsStayInTheirOwnContext() throws Exception {
+        String failing = "var a = 1;\nprint a();\n";
+        String passing = source(InterpreterBenchmark.Workload.FIB);
+        String expected = interpret(passing).out();
+
+        List<Future<Run>> runs = new ArrayList<>();
+        for (int i = 0; i < RUNS; i++) {
+            String source = i % 2 == 0 ? failing : passing;
+            runs.add(executor.submit(() -> interpret(source)));
+        }
+        for (int i = 0; i < RUNS; i++) {
+            Run run = runs.get(i).get();
+            if (i % 2 == 0) {
+                assertTrue(run.context.hadRuntimeError);
+                assertEquals("", run.out());
+            } else {
+                assertFalse(run.context.hadRuntimeError);
+                assertEquals("", run.err());
+                assertEquals(expected, run.out());
+            }
+        }
+    }
+
+    @Test
+    void namesInternedOnDifferentThreadsAreTheSameSymbol() throws Exception {
+        String prefix = "isolation" + System.nanoTime() + "_";
+        List<Callable<Symbol[]>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            tasks.add(() -> {
+                Symbol[] symbols = new Symbol[2000];
+                for (int i = 0; i < symbols.length; i++) {
+                    String name = prefix + i;
+                    symbols[i] = Symbol.intern("(" + name + ")", 1, name.length() + 1);
+                }
+                return symbols;
+            });
+        }
+
+        List<Future<Symbol[]>> results = executor.invokeAll(tasks);
+        Symbol[] first = results.get(0).get();
+        for (Future<Symbol[]> result : results) {
+            Symbol[] symbols = result.get();
+            for (int i = 0; i < symbols.length; i++) {
+                assertSame(first[i], symbols[i]);
+                assertSame(first[i], Symbol.of(prefix + i));
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.craftinginterpreters.language;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+// The embedding API as a host program sees it: compile once, run many times, and errors as LoxExceptions.
+class LoxEngineTest {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+    private final LoxEngine engine = new LoxEngine(new PrintStream(out, true, StandardCharsets.UTF_8),
+            new PrintStream(err, true, StandardCharsets.UTF_8));
+
+    @Test
+    void returnsTheLastExpression() {
+        assertEquals(7.0, engine.compile("var a = 3;\na + 4;").run());
+        assertNull(engine.compile("var a = 3;").run());
+    }
+
+    @Test
+    void bindingsBecomeGlobals() {
+        PreparedScript script = engine.compile("fun square(x) { return x * x; }\nsquare(n) + offset;");
+        assertEquals(9.0, script.run(Map.of("n", 3, "offset", 0.0)));
+        assertEquals(26.0, script.run(Map.of("n", 5L, "offset", 1)));
+    }
+
+    @Test
+    void printsToTheEnginesOutput() {
+        engine.compile("print \"hello\";").run();
+        assertEquals("hello" + System.lineSeparator(), out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void compileErrorsAreThrown() {
+        LoxException error = assertThrows(LoxException.class, () -> engine.compile("var = 1;"));
+        assertTrue(error.getMessage().contains("Expect variable name"), error.getMessage());
+        assertEquals(0, error.getLine());
+    }
+
+    @Test
+    void runtimeErrorsAreThrownWithTheirLine() {
+        PreparedScript script = engine.compile("var a = 1;\n\na();");
+        LoxException error = assertThrows(LoxException.class, script::run);
+        assertEquals("Can only call functions and classes.", error.getMessage());
+        assertEquals(3, error.getLine());
+    }
+
+    @Test
+    void deepRecursionIsAStackOverflow() {
+        PreparedScript script = engine.compile("fun f(n) {\n  if (n == 0) return 0;\n  return 1 + f(n - 1);\n}\n" +
+                "f(n);");
+        assertEquals(100.0, script.run(Map.of("n", 100)));
+        LoxException error = assertThrows(LoxException.class, () -> script.run(Map.of("n", 10000000)));
+        assertEquals("Stack overflow.", error.getMessage());
+        assertEquals(3, error.getLine());
+        // The script is still good for runs that stay within the stack.
+        assertEquals(100.0, script.run(Map.of("n", 100)));
+    }
+
+    @Test
+    void runsOfOneScriptDontShareGlobals() throws Exception {
+        PreparedScript script = engine.compile("class Counter {\n  init(start) { this.count = start; }\n" +
+                "  add() { this.count = this.count + 1; return this; }\n}\n" +
+                "var counter = Counter(start);\nfor (var i = 0; i < 1000; i = i + 1) counter.add();\ncounter.count;");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Object>> runs = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                int start = i;
+                runs.add(executor.submit(() -> script.run(Map.of("start", start))));
+            }
+            for (int i = 0; i < runs.size(); i++) {
+                assertEquals(i + 1000.0, runs.get(i).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
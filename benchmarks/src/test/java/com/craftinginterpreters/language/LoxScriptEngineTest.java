@@ -0,0 +1,96 @@
+package com.craftinginterpreters.language;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.SimpleScriptContext;
+import org.junit.jupiter.api.Test;
+
+// The javax.script engine as a host finds it through ScriptEngineManager.
+class LoxScriptEngineTest {
+    private final ScriptEngine engine = new ScriptEngineManager().getEngineByName("lox");
+
+    @Test
+    void isFoundByName() {
+        assertNotNull(engine);
+        assertEquals("jlox", engine.getFactory().getEngineName());
+    }
+
+    // Shared classes and instances aren't safe to change from several threads, so the engine promises nothing.
+    @Test
+    void makesNoThreadingPromise() {
+        assertNull(engine.getFactory().getParameter("THREADING"));
+    }
+
+    @Test
+    void sharesGlobalsThroughBindings() throws Exception {
+        engine.put("limit", 100);
+        engine.eval("fun over(amount) { return amount > limit; }\nvar seen = 1;");
+        assertEquals(true, engine.eval("over(120);"));
+        assertEquals(1.0, engine.get("seen"));
+    }
+
+    @Test
+    void printsToTheWriterOfEachRunsContext() throws Exception {
+        String source = "fun greet() { print \"hello\"; }\ngreet();";
+        StringWriter first = new StringWriter();
+        StringWriter second = new StringWriter();
+        // The second evaluation of the same source runs the cached script, which must not print to the first
+        // context's writer.
+        engine.eval(source, context(first, new StringWriter()));
+        engine.eval(source, context(second, new StringWriter()));
+        assertEquals("hello" + System.lineSeparator(), first.toString());
+        assertEquals("hello" + System.lineSeparator(), second.toString());
+
+        CompiledScript compiled = ((Compilable)engine).compile("print 1 + 2;");
+        StringWriter third = new StringWriter();
+        compiled.eval(context(third, new StringWriter()));
+        assertEquals("3" + System.lineSeparator(), third.toString());
+    }
+
+    @Test
+    void warnsOnTheErrorWriterOfTheCompilingContext() throws Exception {
+        StringWriter errors = new StringWriter();
+        engine.eval("fun f() { var unused = 1; }", context(new StringWriter(), errors));
+        assertEquals("Local variable unused is never used." + System.lineSeparator(), errors.toString());
+    }
+
+    private static ScriptContext context(StringWriter out, StringWriter err) {
+        ScriptContext context = new SimpleScriptContext();
+        context.setWriter(out);
+        context.setErrorWriter(err);
+        return context;
+    }
+
+    @Test
+    void passesEveryKindOfWriteToTheWriter() {
+        StringWriter writer = new StringWriter();
+        PrintStream stream = new PrintStream(new LoxScriptEngine.WriterStream(writer), true, StandardCharsets.UTF_8);
+        stream.print((Object)"object ");
+        stream.print(1.5);
+        stream.printf(" %d ", 42);
+        stream.write('x');
+        byte[] check = "\u2713".getBytes(StandardCharsets.UTF_8);
+        // A character split over two writes comes out whole.
+        stream.write(check, 0, 1);
+        stream.write(check, 1, check.length - 1);
+        stream.println();
+        assertEquals("object 1.5 42 x\u2713" + System.lineSeparator(), writer.toString());
+    }
+
+    @Test
+    void printsTextThatIsntAscii() throws Exception {
+        StringWriter out = new StringWriter();
+        engine.eval("print \"h\u00e9llo \u2713\";", context(out, new StringWriter()));
+        assertEquals("h\u00e9llo \u2713" + System.lineSeparator(), out.toString());
+    }
+}
@@ -0,0 +1,65 @@
+package com.craftinginterpreters.language;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+// Natives given through a NativeRegistry, called the same way by the embedding API and by both engines.
+class NativeRegistryTest {
+    private static final NativeRegistry NATIVES = new NativeRegistry()
+            .defineNumber("sqrt", Math::sqrt)
+            .defineNumber("hypot", Math::hypot)
+            .define("upper", s -> NativeFunction.string(s).toUpperCase())
+            .define("three", 3, arguments -> arguments.length)
+            .define(new NativeFunction("pair", 2) {
+                @Override
+                protected Object call2(Object first, Object second) {
+                    return NativeFunction.string(second) + "/" + first;
+                }
+            });
+
+    private static final String SCRIPT = "print sqrt(16);\nprint hypot(3, 4);\nprint upper(\"lox\");\n" +
+            "print three(1, 2, 3);\nprint pair(1.0, \"a\");\n";
+    private static final String EXPECTED = String.join(System.lineSeparator(), "4", "5", "LOX", "3", "a/1.0", "");
+
+    @Test
+    void theInterpreterCallsThem() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Context context = new Context(new PrintStream(out, true, StandardCharsets.UTF_8), System.err);
+        Interpreter interpreter = new Interpreter(context, null, NATIVES);
+        interpreter.interpret(Workloads.compile(SCRIPT, interpreter));
+        assertEquals(EXPECTED, out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void theVMCallsThem() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Context context = new Context(new PrintStream(out, true, StandardCharsets.UTF_8), System.err);
+        List<Stmt> statements = Workloads.compile(SCRIPT, new Interpreter(context, null, NATIVES));
+        new VM(context, NATIVES).interpret(new Compiler(context).compile(statements));
+        assertEquals(EXPECTED, out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void theEmbeddingAPICallsThem() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LoxEngine engine = new LoxEngine(new PrintStream(out, true, StandardCharsets.UTF_8), System.err, NATIVES);
+        engine.compile(SCRIPT).run();
+        assertEquals(EXPECTED, out.toString(StandardCharsets.UTF_8));
+        assertEquals(12.0, engine.compile("hypot(a, b) + 7;").run(Map.of("a", 3, "b", 4)));
+    }
+
+    @Test
+    void badArgumentsAreRuntimeErrors() {
+        LoxEngine engine = new LoxEngine(System.out, System.err, NATIVES);
+        LoxException error = assertThrows(LoxException.class, () -> engine.compile("\nsqrt(\"four\");").run());
+        assertEquals("Expected a number but got four.", error.getMessage());
+        assertEquals(2, error.getLine());
+    }
+}
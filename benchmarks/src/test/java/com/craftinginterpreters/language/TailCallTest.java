@@ -0,0 +1,56 @@
+package com.craftinginterpreters.language;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+// Which returns the Resolver marks as tail calls, and that both engines run them in constant stack.
+class TailCallTest {
+    private static final PrintStream QUIET = new PrintStream(OutputStream.nullOutputStream());
+    private static final LoxEngine ENGINE = new LoxEngine(QUIET, QUIET);
+
+    @Test
+    void aReturnInATopLevelBlockIsAnError() {
+        LoxException error = assertThrows(LoxException.class,
+                () -> ENGINE.compile("fun f() { print \"called\"; }\n{ return f(); }\nprint \"after\";"));
+        assertTrue(error.getMessage().contains("Can't return from top-level code."), error.getMessage());
+    }
+
+    @Test
+    void aReturnAfterATopLevelBlockIsAnError() {
+        LoxException error = assertThrows(LoxException.class,
+                () -> ENGINE.compile("fun f() {}\n{ var a = 1; print a; }\nreturn f();"));
+        assertTrue(error.getMessage().contains("Can't return from top-level code."), error.getMessage());
+    }
+
+    @Test
+    void returnsInsideBlocksOfAFunctionAreTailCalls() {
+        String source = "fun count(n) {\n  {\n    if (n == 0) return \"done\";\n    { return count(n - 1); }\n  }\n}\n" +
+                "print count(1000000);\n";
+        assertEquals("done" + System.lineSeparator(), interpret(source));
+        assertEquals("done" + System.lineSeparator(), runOnVM(source));
+    }
+
+    private static String interpret(String source) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Context context = new Context(new PrintStream(out, true, StandardCharsets.UTF_8), System.err);
+        Interpreter interpreter = new Interpreter(context);
+        interpreter.interpret(Workloads.compile(source, interpreter));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static String runOnVM(String source) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Context context = new Context(new PrintStream(out, true, StandardCharsets.UTF_8), System.err);
+        List<Stmt> statements = Workloads.compile(source, new Interpreter(context));
+        new VM(context).interpret(new Compiler(context).compile(statements));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}